@@ -0,0 +1,220 @@
+package xyz.leafing.miniGameManager.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.leafing.miniGameManager.api.SnapshotSection;
+import xyz.leafing.miniGameManager.utils.ItemSection;
+import xyz.leafing.miniGameManager.utils.SnapshotCodec;
+import xyz.leafing.miniGameManager.utils.SnapshotFormat;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * 二进制快照 (SnapshotCodec 格式) 的编码与解码。文件头、区段表、压缩和状态字段使用插件中的 {@link SnapshotFormat}，
+ * 物品区段使用 {@link ItemSection}；物品与 NBT 之间的转换需要服务器，由 {@link FixtureNbt} 代替。
+ * 不涉及物品的操作（引用扫描、移除已恢复的区段）直接调用 {@link SnapshotCodec} 和 {@link SnapshotFormat}。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BinarySnapshotBenchmark {
+
+    private static final SnapshotFormat.Stats STATS = new SnapshotFormat.Stats(
+            20.0, 20.0, 20, 5.0f, 30, 0.25f, 1395, "SURVIVAL", false, false);
+
+    @Param({"gear", "shulkers", "books", "mixed"})
+    public String profile;
+
+    @Param({"true", "false"})
+    public boolean deflate;
+
+    private Fixtures.Inventory inventory;
+    private byte[] encoded;
+    private byte[] referenced;
+
+    @Setup
+    public void setup() throws IOException {
+        inventory = Fixtures.inventory(profile);
+        encoded = encode(inventory, deflate);
+        referenced = encodeReferenced(inventory, deflate);
+        System.out.printf("%n[%s] 二进制快照大小 (Deflate=%s): %d 字节, 物品去重后 %d 字节%n",
+                profile, deflate, encoded.length, referenced.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return encode(inventory, deflate);
+    }
+
+    @Benchmark
+    public Fixtures.Inventory decode() throws IOException {
+        return decode(encoded);
+    }
+
+    /**
+     * 只恢复背包时的解码量: 解析区段表后只解压 INVENTORY 区段。
+     */
+    @Benchmark
+    public List<List<Map<String, Object>>> decodeInventoryOnly() throws IOException {
+        try (DataInputStream in = openSection(encoded, SnapshotSection.INVENTORY)) {
+            return List.of(readItems(in), readItems(in));
+        }
+    }
+
+    /**
+     * 启动恢复时为每个快照重建物品引用计数的开销，调用插件中的 {@link SnapshotCodec#readReferences(byte[])}。
+     */
+    @Benchmark
+    public List<byte[]> readReferences() throws IOException {
+        return SnapshotCodec.readReferences(referenced);
+    }
+
+    /**
+     * 只恢复背包后从快照中移除已恢复区段的开销，其余区段原样复制。
+     */
+    @Benchmark
+    public byte[] withoutInventory() throws IOException {
+        return SnapshotFormat.without(encoded, EnumSet.of(SnapshotSection.INVENTORY, SnapshotSection.ARMOR));
+    }
+
+    static byte[] encode(Fixtures.Inventory inventory, boolean deflate) throws IOException {
+        // Fixtures 的顺序为主背包、盔甲、副手、末影箱
+        List<List<Map<String, Object>>> items = inventory.sections();
+        Map<SnapshotSection, SnapshotFormat.SectionWriter> sections = new EnumMap<>(SnapshotSection.class);
+        sections.put(SnapshotSection.STATS, STATS::write);
+        sections.put(SnapshotSection.EFFECTS, out -> out.writeShort(0));
+        sections.put(SnapshotSection.INVENTORY, out -> {
+            writeItems(out, items.get(0));
+            writeItems(out, items.get(2));
+        });
+        sections.put(SnapshotSection.ARMOR, out -> writeItems(out, items.get(1)));
+        sections.put(SnapshotSection.ENDER_CHEST, out -> writeItems(out, items.get(3)));
+        return SnapshotFormat.write(sections, deflate);
+    }
+
+    static Fixtures.Inventory decode(byte[] data) throws IOException {
+        try (DataInputStream stats = openSection(data, SnapshotSection.STATS)) {
+            SnapshotFormat.Stats.read(stats);
+        }
+        try (DataInputStream effects = openSection(data, SnapshotSection.EFFECTS)) {
+            effects.readUnsignedShort();
+        }
+        List<Map<String, Object>> main;
+        List<Map<String, Object>> offhand;
+        try (DataInputStream in = openSection(data, SnapshotSection.INVENTORY)) {
+            main = readItems(in);
+            offhand = readItems(in);
+        }
+        List<Map<String, Object>> armor;
+        try (DataInputStream in = openSection(data, SnapshotSection.ARMOR)) {
+            armor = readItems(in);
+        }
+        List<Map<String, Object>> enderChest;
+        try (DataInputStream in = openSection(data, SnapshotSection.ENDER_CHEST)) {
+            enderChest = readItems(in);
+        }
+        return new Fixtures.Inventory(main, armor, offhand, enderChest);
+    }
+
+    /**
+     * 开启 snapshot.dedup-items 时的快照：物品区段只保存每个物品的内容哈希。
+     */
+    static byte[] encodeReferenced(Fixtures.Inventory inventory, boolean deflate) throws IOException {
+        List<List<Map<String, Object>>> items = inventory.sections();
+        Map<SnapshotSection, SnapshotFormat.SectionWriter> sections = new EnumMap<>(SnapshotSection.class);
+        sections.put(SnapshotSection.STATS, STATS::write);
+        sections.put(SnapshotSection.EFFECTS, out -> out.writeShort(0));
+        sections.put(SnapshotSection.INVENTORY, out -> {
+            writeReferences(out, items.get(0));
+            writeReferences(out, items.get(2));
+        });
+        sections.put(SnapshotSection.ARMOR, out -> writeReferences(out, items.get(1)));
+        sections.put(SnapshotSection.ENDER_CHEST, out -> writeReferences(out, items.get(3)));
+        return SnapshotFormat.write(sections, deflate);
+    }
+
+    private static void writeReferences(DataOutputStream out, List<Map<String, Object>> items) throws IOException {
+        int[] slots = IntStream.range(0, items.size())
+                .filter(i -> items.get(i) != null)
+                .toArray();
+        List<byte[]> hashes = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            hashes.add(sha256(FixtureNbt.toBytes(items.get(slot))));
+        }
+        ItemSection.referenced(items.size(), slots, hashes).write(out);
+    }
+
+    private static byte[] sha256(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static DataInputStream openSection(byte[] data, SnapshotSection section) throws IOException {
+        SnapshotFormat.readVersion(data);
+        SnapshotFormat.Slice slice = SnapshotFormat.readTable(data).get(section);
+        if (slice == null) {
+            throw new IOException("快照缺少区段 " + section);
+        }
+        return SnapshotFormat.openSlice(data, slice);
+    }
+
+    private static void writeItems(DataOutputStream out, List<Map<String, Object>> items) throws IOException {
+        int[] slots = IntStream.range(0, items.size())
+                .filter(i -> items.get(i) != null)
+                .toArray();
+        if (slots.length == 0) {
+            ItemSection.inline(items.size(), slots, null).write(out);
+            return;
+        }
+        List<Object> list = new ArrayList<>(slots.length);
+        for (int slot : slots) {
+            list.add(items.get(slot));
+        }
+        Map<String, Object> section = new LinkedHashMap<>();
+        section.put("Items", list);
+        ItemSection.inline(items.size(), slots, FixtureNbt.toBytes(section)).write(out);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> readItems(DataInputStream in) throws IOException {
+        ItemSection section = ItemSection.read(in, SnapshotFormat.VERSION);
+        List<Map<String, Object>> items = Arrays.asList(new Map[section.length()]);
+        int[] slots = section.slots();
+        if (slots.length == 0) {
+            return items;
+        }
+        List<Object> list = (List<Object>) FixtureNbt.read(section.nbt()).get("Items");
+        for (int i = 0; i < slots.length; i++) {
+            items.set(slots[i], (Map<String, Object>) list.get(i));
+        }
+        return items;
+    }
+}
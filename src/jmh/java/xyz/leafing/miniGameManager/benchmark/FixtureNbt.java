@@ -0,0 +1,517 @@
+package xyz.leafing.miniGameManager.benchmark;
+
+import xyz.leafing.miniGameManager.utils.NbtPatch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试用的最小 NBT 实现，不依赖服务器。
+ * 标签直接映射为 Java 对象: 复合标签为 Map，列表为 List，数组为 byte[]/int[]/long[]，其余为对应的包装类型。
+ * 二进制格式与原版一致，SNBT 只覆盖物品数据中会出现的写法，足以模拟旧版 YAML 快照中的字符串。
+ * <p>
+ * 只用来代替需要服务器的部分: NBT-API 的标签树 (NBTContainer、NBTFile) 和物品 SNBT。
+ * 快照格式、物品区段和 .dat 补丁直接使用插件中的实现。
+ */
+final class FixtureNbt {
+
+    private static final byte END = 0;
+    private static final byte BYTE = 1;
+    private static final byte SHORT = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte FLOAT = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte BYTE_ARRAY = 7;
+    private static final byte STRING = 8;
+    private static final byte LIST = 9;
+    private static final byte COMPOUND = 10;
+    private static final byte INT_ARRAY = 11;
+    private static final byte LONG_ARRAY = 12;
+
+    private FixtureNbt() {
+    }
+
+    /**
+     * 让 {@link NbtPatch#applyTo} 作用于这里的标签树，对应插件中基于 NBTCompound 的实现。
+     */
+    static NbtPatch.Target target(Map<String, Object> compound) {
+        return new NbtPatch.Target() {
+            @Override
+            public void setInt(String name, int value) {
+                compound.put(name, value);
+            }
+
+            @Override
+            public void setLong(String name, long value) {
+                compound.put(name, value);
+            }
+
+            @Override
+            public void setString(String name, String value) {
+                compound.put(name, value);
+            }
+
+            @Override
+            public void setDoubleList(String name, double[] values) {
+                List<Object> list = new ArrayList<>(values.length);
+                for (double value : values) {
+                    list.add(value);
+                }
+                compound.put(name, list);
+            }
+
+            @Override
+            public void setFloatList(String name, float[] values) {
+                List<Object> list = new ArrayList<>(values.length);
+                for (float value : values) {
+                    list.add(value);
+                }
+                compound.put(name, list);
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public NbtPatch.Target compound(String name) {
+                return target((Map<String, Object>) compound.computeIfAbsent(name, key -> new LinkedHashMap<String, Object>()));
+            }
+        };
+    }
+
+    // --- 二进制 ---
+
+    static byte[] toBytes(Map<String, Object> root) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+        try {
+            write(bytes, root);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 写入未压缩的根复合标签，对应 SnapshotCodec 中 NbtBinary.write 的输出。
+     */
+    static void write(OutputStream stream, Map<String, Object> root) throws IOException {
+        DataOutputStream out = new DataOutputStream(stream);
+        out.writeByte(COMPOUND);
+        out.writeUTF("");
+        writeCompound(out, root);
+        out.flush();
+    }
+
+    static Map<String, Object> read(byte[] data) throws IOException {
+        return read(new ByteArrayInputStream(data));
+    }
+
+    static Map<String, Object> read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(stream);
+        if (in.readByte() != COMPOUND) {
+            throw new IOException("根标签不是复合标签");
+        }
+        in.readUTF();
+        return readCompound(in);
+    }
+
+    private static void writeCompound(DataOutput out, Map<String, Object> compound) throws IOException {
+        for (Map.Entry<String, Object> entry : compound.entrySet()) {
+            out.writeByte(typeOf(entry.getValue()));
+            out.writeUTF(entry.getKey());
+            writePayload(out, entry.getValue());
+        }
+        out.writeByte(END);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writePayload(DataOutput out, Object value) throws IOException {
+        switch (value) {
+            case Byte b -> out.writeByte(b);
+            case Short s -> out.writeShort(s);
+            case Integer i -> out.writeInt(i);
+            case Long l -> out.writeLong(l);
+            case Float f -> out.writeFloat(f);
+            case Double d -> out.writeDouble(d);
+            case String s -> out.writeUTF(s);
+            case byte[] array -> {
+                out.writeInt(array.length);
+                out.write(array);
+            }
+            case int[] array -> {
+                out.writeInt(array.length);
+                for (int element : array) {
+                    out.writeInt(element);
+                }
+            }
+            case long[] array -> {
+                out.writeInt(array.length);
+                for (long element : array) {
+                    out.writeLong(element);
+                }
+            }
+            case List<?> list -> {
+                out.writeByte(list.isEmpty() ? END : typeOf(list.get(0)));
+                out.writeInt(list.size());
+                for (Object element : list) {
+                    writePayload(out, element);
+                }
+            }
+            case Map<?, ?> map -> writeCompound(out, (Map<String, Object>) map);
+            default -> throw new IllegalArgumentException("不支持的标签类型: " + value.getClass());
+        }
+    }
+
+    private static byte typeOf(Object value) {
+        return switch (value) {
+            case Byte b -> BYTE;
+            case Short s -> SHORT;
+            case Integer i -> INT;
+            case Long l -> LONG;
+            case Float f -> FLOAT;
+            case Double d -> DOUBLE;
+            case String s -> STRING;
+            case byte[] array -> BYTE_ARRAY;
+            case int[] array -> INT_ARRAY;
+            case long[] array -> LONG_ARRAY;
+            case List<?> list -> LIST;
+            case Map<?, ?> map -> COMPOUND;
+            default -> throw new IllegalArgumentException("不支持的标签类型: " + value.getClass());
+        };
+    }
+
+    private static Map<String, Object> readCompound(DataInput in) throws IOException {
+        Map<String, Object> compound = new LinkedHashMap<>();
+        byte type;
+        while ((type = in.readByte()) != END) {
+            String key = in.readUTF();
+            compound.put(key, readPayload(in, type));
+        }
+        return compound;
+    }
+
+    private static Object readPayload(DataInput in, byte type) throws IOException {
+        return switch (type) {
+            case BYTE -> in.readByte();
+            case SHORT -> in.readShort();
+            case INT -> in.readInt();
+            case LONG -> in.readLong();
+            case FLOAT -> in.readFloat();
+            case DOUBLE -> in.readDouble();
+            case STRING -> in.readUTF();
+            case BYTE_ARRAY -> {
+                byte[] array = new byte[in.readInt()];
+                in.readFully(array);
+                yield array;
+            }
+            case INT_ARRAY -> {
+                int[] array = new int[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = in.readInt();
+                }
+                yield array;
+            }
+            case LONG_ARRAY -> {
+                long[] array = new long[in.readInt()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = in.readLong();
+                }
+                yield array;
+            }
+            case LIST -> {
+                byte elementType = in.readByte();
+                int size = in.readInt();
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(readPayload(in, elementType));
+                }
+                yield list;
+            }
+            case COMPOUND -> readCompound(in);
+            default -> throw new IOException("未知的标签类型: " + type);
+        };
+    }
+
+    // --- SNBT ---
+
+    static String toSnbt(Object value) {
+        StringBuilder builder = new StringBuilder(256);
+        appendSnbt(builder, value);
+        return builder.toString();
+    }
+
+    private static void appendSnbt(StringBuilder builder, Object value) {
+        switch (value) {
+            case Byte b -> builder.append(b).append('b');
+            case Short s -> builder.append(s).append('s');
+            case Integer i -> builder.append(i);
+            case Long l -> builder.append(l).append('L');
+            case Float f -> builder.append(f).append('f');
+            case Double d -> builder.append(d).append('d');
+            case String s -> appendQuoted(builder, s);
+            case byte[] array -> {
+                builder.append("[B;");
+                for (int i = 0; i < array.length; i++) {
+                    builder.append(i == 0 ? "" : ",").append(array[i]).append('b');
+                }
+                builder.append(']');
+            }
+            case int[] array -> {
+                builder.append("[I;");
+                for (int i = 0; i < array.length; i++) {
+                    builder.append(i == 0 ? "" : ",").append(array[i]);
+                }
+                builder.append(']');
+            }
+            case long[] array -> {
+                builder.append("[L;");
+                for (int i = 0; i < array.length; i++) {
+                    builder.append(i == 0 ? "" : ",").append(array[i]).append('L');
+                }
+                builder.append(']');
+            }
+            case List<?> list -> {
+                builder.append('[');
+                for (int i = 0; i < list.size(); i++) {
+                    if (i > 0) {
+                        builder.append(',');
+                    }
+                    appendSnbt(builder, list.get(i));
+                }
+                builder.append(']');
+            }
+            case Map<?, ?> map -> {
+                builder.append('{');
+                boolean first = true;
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    if (!first) {
+                        builder.append(',');
+                    }
+                    first = false;
+                    String key = (String) entry.getKey();
+                    if (isPlainKey(key)) {
+                        builder.append(key);
+                    } else {
+                        appendQuoted(builder, key);
+                    }
+                    builder.append(':');
+                    appendSnbt(builder, entry.getValue());
+                }
+                builder.append('}');
+            }
+            default -> throw new IllegalArgumentException("不支持的标签类型: " + value.getClass());
+        }
+    }
+
+    private static boolean isPlainKey(String key) {
+        if (key.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            if (!isPlainChar(key.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isPlainChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                || c == '_' || c == '-' || c == '.' || c == '+';
+    }
+
+    private static void appendQuoted(StringBuilder builder, String value) {
+        builder.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\');
+            }
+            builder.append(c);
+        }
+        builder.append('"');
+    }
+
+    static Object parseSnbt(String snbt) {
+        SnbtReader reader = new SnbtReader(snbt);
+        Object value = reader.readValue();
+        reader.skipWhitespace();
+        if (reader.pos != snbt.length()) {
+            throw new IllegalArgumentException("SNBT 末尾有多余内容: " + reader.pos);
+        }
+        return value;
+    }
+
+    private static final class SnbtReader {
+        private final String text;
+        private int pos;
+
+        SnbtReader(String text) {
+            this.text = text;
+        }
+
+        Object readValue() {
+            skipWhitespace();
+            char c = text.charAt(pos);
+            if (c == '{') {
+                return readCompound();
+            }
+            if (c == '[') {
+                return readListOrArray();
+            }
+            if (c == '"' || c == '\'') {
+                return readQuoted();
+            }
+            return parsePrimitive(readPlain());
+        }
+
+        private Map<String, Object> readCompound() {
+            Map<String, Object> compound = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return compound;
+            }
+            do {
+                skipWhitespace();
+                char c = peek();
+                String key = c == '"' || c == '\'' ? readQuoted() : readPlain();
+                skipWhitespace();
+                expect(':');
+                compound.put(key, readValue());
+                skipWhitespace();
+            } while (tryConsume(','));
+            expect('}');
+            return compound;
+        }
+
+        private Object readListOrArray() {
+            expect('[');
+            if (pos + 1 < text.length() && text.charAt(pos + 1) == ';') {
+                char arrayType = text.charAt(pos);
+                pos += 2;
+                List<Object> elements = readElements();
+                return switch (arrayType) {
+                    case 'B' -> {
+                        byte[] array = new byte[elements.size()];
+                        for (int i = 0; i < array.length; i++) {
+                            array[i] = ((Number) elements.get(i)).byteValue();
+                        }
+                        yield array;
+                    }
+                    case 'I' -> elements.stream().mapToInt(e -> ((Number) e).intValue()).toArray();
+                    case 'L' -> elements.stream().mapToLong(e -> ((Number) e).longValue()).toArray();
+                    default -> throw new IllegalArgumentException("未知的数组类型: " + arrayType);
+                };
+            }
+            return readElements();
+        }
+
+        private List<Object> readElements() {
+            List<Object> list = new ArrayList<>();
+            skipWhitespace();
+            if (peek() == ']') {
+                pos++;
+                return list;
+            }
+            do {
+                list.add(readValue());
+                skipWhitespace();
+            } while (tryConsume(','));
+            expect(']');
+            return list;
+        }
+
+        private String readQuoted() {
+            char quote = text.charAt(pos++);
+            StringBuilder builder = new StringBuilder();
+            while (true) {
+                char c = text.charAt(pos++);
+                if (c == '\\') {
+                    builder.append(text.charAt(pos++));
+                } else if (c == quote) {
+                    return builder.toString();
+                } else {
+                    builder.append(c);
+                }
+            }
+        }
+
+        private String readPlain() {
+            int start = pos;
+            while (pos < text.length() && isPlainChar(text.charAt(pos))) {
+                pos++;
+            }
+            if (start == pos) {
+                throw new IllegalArgumentException("SNBT 在位置 " + pos + " 处无法解析");
+            }
+            return text.substring(start, pos);
+        }
+
+        private static Object parsePrimitive(String token) {
+            try {
+                char suffix = Character.toLowerCase(token.charAt(token.length() - 1));
+                String number = token.substring(0, token.length() - 1);
+                switch (suffix) {
+                    case 'b':
+                        return Byte.parseByte(number);
+                    case 's':
+                        return Short.parseShort(number);
+                    case 'l':
+                        return Long.parseLong(number);
+                    case 'f':
+                        return Float.parseFloat(number);
+                    case 'd':
+                        return Double.parseDouble(number);
+                    default:
+                        break;
+                }
+                if (token.indexOf('.') >= 0 || token.indexOf('e') >= 0 || token.indexOf('E') >= 0) {
+                    return Double.parseDouble(token);
+                }
+                return Integer.parseInt(token);
+            } catch (NumberFormatException e) {
+                if (token.equals("true") || token.equals("false")) {
+                    return (byte) (token.equals("true") ? 1 : 0);
+                }
+                return token;
+            }
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        private char peek() {
+            return text.charAt(pos);
+        }
+
+        private boolean tryConsume(char c) {
+            if (pos < text.length() && text.charAt(pos) == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!tryConsume(c)) {
+                throw new IllegalArgumentException("SNBT 在位置 " + pos + " 处应为 '" + c + "'");
+            }
+        }
+    }
+}
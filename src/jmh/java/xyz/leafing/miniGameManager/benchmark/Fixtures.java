@@ -0,0 +1,270 @@
+package xyz.leafing.miniGameManager.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 基准测试用的玩家数据夹具，物品使用 1.21 的数据组件格式。
+ * <ul>
+ *     <li>gear: 满附魔的全套装备和工具</li>
+ *     <li>shulkers: 背包和末影箱都装满了装有物品的潜影盒</li>
+ *     <li>books: 多页的成书</li>
+ *     <li>mixed: 以上混合，接近长期游玩的生存玩家</li>
+ * </ul>
+ */
+final class Fixtures {
+
+    static final int INVENTORY_SIZE = 36;
+    static final int ARMOR_SIZE = 4;
+    static final int EXTRA_SIZE = 1;
+    static final int ENDER_CHEST_SIZE = 27;
+
+    /**
+     * 与 PlayerDataSnapshot 相同的四个物品区段，空槽位为 null。
+     */
+    record Inventory(List<Map<String, Object>> main, List<Map<String, Object>> armor,
+                     List<Map<String, Object>> extra, List<Map<String, Object>> enderChest) {
+
+        List<List<Map<String, Object>>> sections() {
+            return List.of(main, armor, extra, enderChest);
+        }
+    }
+
+    private Fixtures() {
+    }
+
+    static Inventory inventory(String profile) {
+        List<Map<String, Object>> main = slots(INVENTORY_SIZE);
+        List<Map<String, Object>> armor = slots(ARMOR_SIZE);
+        List<Map<String, Object>> extra = slots(EXTRA_SIZE);
+        List<Map<String, Object>> enderChest = slots(ENDER_CHEST_SIZE);
+
+        switch (profile) {
+            case "gear" -> {
+                fillGear(main, armor, extra);
+                for (int i = 0; i < 18; i++) {
+                    enderChest.set(i, enchantedTool("minecraft:diamond_pickaxe", i));
+                }
+            }
+            case "shulkers" -> {
+                for (int i = 0; i < INVENTORY_SIZE; i++) {
+                    main.set(i, shulkerBox(i));
+                }
+                for (int i = 0; i < ENDER_CHEST_SIZE; i++) {
+                    enderChest.set(i, shulkerBox(100 + i));
+                }
+            }
+            case "books" -> {
+                for (int i = 0; i < INVENTORY_SIZE; i += 2) {
+                    main.set(i, writtenBook(i));
+                }
+                for (int i = 0; i < ENDER_CHEST_SIZE; i += 3) {
+                    enderChest.set(i, writtenBook(100 + i));
+                }
+            }
+            case "mixed" -> {
+                fillGear(main, armor, extra);
+                for (int i = 18; i < 27; i++) {
+                    main.set(i, shulkerBox(i));
+                }
+                for (int i = 27; i < INVENTORY_SIZE; i++) {
+                    main.set(i, writtenBook(i));
+                }
+                for (int i = 0; i < ENDER_CHEST_SIZE; i += 2) {
+                    enderChest.set(i, i % 4 == 0 ? shulkerBox(100 + i) : stack("minecraft:diamond_block", 64));
+                }
+            }
+            default -> throw new IllegalArgumentException("未知的夹具: " + profile);
+        }
+        return new Inventory(main, armor, extra, enderChest);
+    }
+
+    /**
+     * 与服务器保存的玩家 .dat 结构相同的根标签，物品按原版槽位编号写入 Inventory。
+     */
+    static Map<String, Object> playerDat(String profile) {
+        Inventory inventory = inventory(profile);
+        Map<String, Object> root = new LinkedHashMap<>();
+        root.put("DataVersion", 3953);
+        root.put("Inventory", slotted(inventory));
+        root.put("EnderItems", slottedList(inventory.enderChest(), 0));
+        root.put("Pos", List.of(128.5d, 64.0d, -42.5d));
+        root.put("Rotation", List.of(90.0f, 12.5f));
+        root.put("Motion", List.of(0.0d, -0.0784d, 0.0d));
+        root.put("Dimension", "minecraft:overworld");
+        root.put("playerGameType", 0);
+        root.put("previousPlayerGameType", 2);
+        root.put("Health", 20.0f);
+        root.put("foodLevel", 20);
+        root.put("foodSaturationLevel", 5.0f);
+        root.put("XpLevel", 30);
+        root.put("XpP", 0.25f);
+        root.put("XpTotal", 1395);
+        root.put("SelectedItemSlot", 0);
+        root.put("UUID", new int[]{0x1234abcd, 0x5678ef01, 0x9abc2345, 0xdef06789});
+
+        Map<String, Object> abilities = new LinkedHashMap<>();
+        abilities.put("flying", (byte) 0);
+        abilities.put("mayfly", (byte) 0);
+        abilities.put("instabuild", (byte) 0);
+        abilities.put("invulnerable", (byte) 0);
+        abilities.put("walkSpeed", 0.1f);
+        abilities.put("flySpeed", 0.05f);
+        root.put("abilities", abilities);
+
+        // 真实玩家的配方书通常占 .dat 的很大一部分，离线修改时也必须完整解析和重写
+        List<Object> recipes = new ArrayList<>();
+        for (int i = 0; i < 800; i++) {
+            recipes.add("minecraft:recipe_" + i);
+        }
+        Map<String, Object> recipeBook = new LinkedHashMap<>();
+        recipeBook.put("recipes", recipes);
+        recipeBook.put("toBeDisplayed", new ArrayList<>(recipes.subList(0, 40)));
+        root.put("recipeBook", recipeBook);
+
+        Map<String, Object> bukkit = new LinkedHashMap<>();
+        bukkit.put("firstPlayed", 1_700_000_000_000L);
+        bukkit.put("lastPlayed", 1_760_000_000_000L);
+        bukkit.put("lastKnownName", "FixturePlayer");
+        root.put("bukkit", bukkit);
+        return root;
+    }
+
+    /**
+     * 把快照物品转换为 .dat 中 Inventory 列表的格式：主背包 0-35，盔甲 100-103，副手 -106。
+     */
+    static List<Object> slotted(Inventory inventory) {
+        List<Object> items = slottedList(inventory.main(), 0);
+        items.addAll(slottedList(inventory.armor(), 100));
+        List<Map<String, Object>> extra = inventory.extra();
+        if (extra.get(0) != null) {
+            Map<String, Object> offhand = new LinkedHashMap<>(extra.get(0));
+            offhand.put("Slot", (byte) -106);
+            items.add(offhand);
+        }
+        return items;
+    }
+
+    static List<Object> slottedList(List<Map<String, Object>> section, int offset) {
+        List<Object> items = new ArrayList<>();
+        for (int i = 0; i < section.size(); i++) {
+            if (section.get(i) != null) {
+                Map<String, Object> item = new LinkedHashMap<>(section.get(i));
+                item.put("Slot", (byte) (offset + i));
+                items.add(item);
+            }
+        }
+        return items;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> slots(int size) {
+        return Arrays.asList(new Map[size]);
+    }
+
+    private static void fillGear(List<Map<String, Object>> main, List<Map<String, Object>> armor, List<Map<String, Object>> extra) {
+        String[] tools = {"minecraft:netherite_sword", "minecraft:netherite_pickaxe", "minecraft:netherite_axe",
+                "minecraft:netherite_shovel", "minecraft:bow", "minecraft:crossbow", "minecraft:trident",
+                "minecraft:mace", "minecraft:fishing_rod"};
+        for (int i = 0; i < tools.length; i++) {
+            main.set(i, enchantedTool(tools[i], i));
+        }
+        for (int i = 9; i < 18; i++) {
+            main.set(i, stack(i % 2 == 0 ? "minecraft:golden_carrot" : "minecraft:firework_rocket", 64));
+        }
+        String[] pieces = {"minecraft:netherite_boots", "minecraft:netherite_leggings",
+                "minecraft:netherite_chestplate", "minecraft:netherite_helmet"};
+        for (int i = 0; i < pieces.length; i++) {
+            armor.set(i, enchantedTool(pieces[i], 20 + i));
+        }
+        extra.set(0, enchantedTool("minecraft:shield", 30));
+    }
+
+    static Map<String, Object> stack(String id, int count) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("id", id);
+        item.put("count", count);
+        return item;
+    }
+
+    static Map<String, Object> enchantedTool(String id, int seed) {
+        Map<String, Object> levels = new LinkedHashMap<>();
+        levels.put("minecraft:unbreaking", 3);
+        levels.put("minecraft:mending", 1);
+        levels.put("minecraft:sharpness", 5);
+        levels.put("minecraft:protection", 4);
+        levels.put("minecraft:efficiency", 5);
+        levels.put("minecraft:fortune", 3);
+        Map<String, Object> enchantments = new LinkedHashMap<>();
+        enchantments.put("levels", levels);
+
+        Map<String, Object> modifier = new LinkedHashMap<>();
+        modifier.put("type", "minecraft:generic.attack_damage");
+        modifier.put("id", "minecraft:fixture_" + seed);
+        modifier.put("amount", 8.0d);
+        modifier.put("operation", "add_value");
+        modifier.put("slot", "mainhand");
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("modifiers", List.of(modifier));
+
+        Map<String, Object> components = new LinkedHashMap<>();
+        components.put("minecraft:enchantments", enchantments);
+        components.put("minecraft:damage", seed * 7);
+        components.put("minecraft:repair_cost", 31);
+        components.put("minecraft:custom_name", "{\"text\":\"传说之物 #" + seed + "\",\"color\":\"gold\",\"italic\":false}");
+        components.put("minecraft:lore", List.of(
+                "{\"text\":\"在第 " + seed + " 届小游戏中获得\",\"color\":\"gray\"}",
+                "{\"text\":\"不可交易\",\"color\":\"red\"}"));
+        components.put("minecraft:attribute_modifiers", attributes);
+
+        Map<String, Object> item = stack(id, 1);
+        item.put("components", components);
+        return item;
+    }
+
+    static Map<String, Object> shulkerBox(int seed) {
+        List<Object> contents = new ArrayList<>(27);
+        for (int slot = 0; slot < 27; slot++) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("slot", slot);
+            entry.put("item", slot % 3 == 0
+                    ? enchantedTool("minecraft:diamond_sword", seed * 27 + slot)
+                    : stack(slot % 2 == 0 ? "minecraft:obsidian" : "minecraft:ender_pearl", slot % 2 == 0 ? 64 : 16));
+            contents.add(entry);
+        }
+        Map<String, Object> components = new LinkedHashMap<>();
+        components.put("minecraft:container", contents);
+        components.put("minecraft:custom_name", "{\"text\":\"仓库 " + seed + "\"}");
+
+        Map<String, Object> item = stack("minecraft:shulker_box", 1);
+        item.put("components", components);
+        return item;
+    }
+
+    static Map<String, Object> writtenBook(int seed) {
+        List<Object> pages = new ArrayList<>(50);
+        for (int page = 0; page < 50; page++) {
+            Map<String, Object> filtered = new LinkedHashMap<>();
+            filtered.put("raw", "{\"text\":\"" + ("第 " + seed + " 本书的第 " + page + " 页，记录了一场小游戏的完整经过。").repeat(4) + "\"}");
+            pages.add(filtered);
+        }
+        Map<String, Object> title = new LinkedHashMap<>();
+        title.put("raw", "小游戏日志 " + seed);
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("title", title);
+        content.put("author", "FixturePlayer");
+        content.put("generation", 0);
+        content.put("pages", pages);
+        content.put("resolved", (byte) 1);
+
+        Map<String, Object> components = new LinkedHashMap<>();
+        components.put("minecraft:written_book_content", content);
+
+        Map<String, Object> item = stack("minecraft:written_book", 1);
+        item.put("components", components);
+        return item;
+    }
+}
@@ -0,0 +1,123 @@
+package xyz.leafing.miniGameManager.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 旧版 YAML 快照 (每个物品一条 SNBT 字符串) 的编码与解码，作为二进制格式的对照组。
+ * 服务器上的 NBTItem 与 ItemStack 转换不在测量范围内，两种格式共享这部分开销。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LegacyYamlBenchmark {
+
+    @Param({"gear", "shulkers", "books", "mixed"})
+    public String profile;
+
+    private Fixtures.Inventory inventory;
+    private String encoded;
+
+    @Setup
+    public void setup() {
+        inventory = Fixtures.inventory(profile);
+        encoded = encode(inventory);
+        System.out.printf("%n[%s] 旧版 YAML 快照大小: %d 字节%n", profile, encoded.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encode(inventory).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public Fixtures.Inventory decode() {
+        return decode(encoded);
+    }
+
+    static String encode(Fixtures.Inventory inventory) {
+        // 与旧版 PlayerDataManager.savePlayerData 写入的键一致
+        Map<String, Object> items = new LinkedHashMap<>();
+        items.put("main", serializeItemStackArray(inventory.main()));
+        items.put("armor", serializeItemStackArray(inventory.armor()));
+        items.put("extra", serializeItemStackArray(inventory.extra()));
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("health", 20.0d);
+        stats.put("max_health", 20.0d);
+        stats.put("food", 20);
+        stats.put("saturation", 5.0d);
+        Map<String, Object> exp = new LinkedHashMap<>();
+        exp.put("level", 30);
+        exp.put("progress", 0.25d);
+        exp.put("total", 1395);
+
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("inventory", items);
+        data.put("enderchest", serializeItemStackArray(inventory.enderChest()));
+        data.put("stats", stats);
+        data.put("exp", exp);
+        data.put("gamemode", "SURVIVAL");
+        data.put("flying", false);
+        data.put("allow-flight", false);
+        return yaml().dump(data);
+    }
+
+    @SuppressWarnings("unchecked")
+    static Fixtures.Inventory decode(String encoded) {
+        Map<String, Object> data = yaml().load(encoded);
+        Map<String, Object> items = (Map<String, Object>) data.get("inventory");
+        return new Fixtures.Inventory(
+                deserializeItemStackArray((List<String>) items.get("main")),
+                deserializeItemStackArray((List<String>) items.get("armor")),
+                deserializeItemStackArray((List<String>) items.get("extra")),
+                deserializeItemStackArray((List<String>) data.get("enderchest")));
+    }
+
+    private static List<String> serializeItemStackArray(List<Map<String, Object>> items) {
+        List<String> nbtStrings = new ArrayList<>(items.size());
+        for (Map<String, Object> item : items) {
+            nbtStrings.add(item == null ? "" : FixtureNbt.toSnbt(item));
+        }
+        return nbtStrings;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> deserializeItemStackArray(List<String> nbtStrings) {
+        List<Map<String, Object>> items = new ArrayList<>(nbtStrings.size());
+        for (String nbtString : nbtStrings) {
+            items.add(nbtString == null || nbtString.isEmpty() ? null : (Map<String, Object>) FixtureNbt.parseSnbt(nbtString));
+        }
+        return items;
+    }
+
+    private static Yaml yaml() {
+        // YamlConfiguration 每次保存和加载都会创建新的 Yaml 实例，这里保持一致
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setIndent(2);
+        options.setWidth(80);
+        return new Yaml(options);
+    }
+}
@@ -0,0 +1,173 @@
+package xyz.leafing.miniGameManager.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import xyz.leafing.miniGameManager.utils.AtomicFiles;
+import xyz.leafing.miniGameManager.utils.NbtPatch;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 离线修改玩家 .dat 的延迟。与 OfflinePlayerManager 使用 NBTFile 的方式相同：
+ * 解压并解析整棵 NBT 树，修改后重新压缩，再通过 {@link AtomicFiles} 原子替换文件。
+ * 标签树由 {@link FixtureNbt} 代替需要服务器的 NBTFile；传送和游戏模式的修改使用插件中的 {@link NbtPatch}，
+ * 分别应用到标签树和流式改写，用于对比两种方式。
+ * <p>
+ * 默认使用夹具生成的 .dat；设置 {@code -Dmgm.bench.playerdata=<目录>} 时改用该目录中的第一个真实玩家文件。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OfflineDatEditBenchmark {
+
+    @Param({"gear", "shulkers", "mixed"})
+    public String profile;
+
+    private Path directory;
+    private Path datFile;
+    private List<Object> restoredInventory;
+    private List<Object> restoredEnderItems;
+    private NbtPatch teleportAndGameModePatch;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("mgm-bench");
+        datFile = directory.resolve("00000000-0000-0000-0000-000000000000.dat");
+
+        Path sample = findSample();
+        if (sample != null) {
+            Files.copy(sample, datFile);
+        } else {
+            Map<String, Object> root = Fixtures.playerDat(profile);
+            AtomicFiles.write(datFile, out -> {
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                FixtureNbt.write(gzip, root);
+                gzip.finish();
+            });
+        }
+
+        Fixtures.Inventory snapshot = Fixtures.inventory(profile);
+        restoredInventory = Fixtures.slotted(snapshot);
+        restoredEnderItems = Fixtures.slottedList(snapshot.enderChest(), 0);
+        // 与 teleportOperation 和 gameModeOperation 合并后的补丁相同
+        NbtPatch teleport = new NbtPatch()
+                .setDoubleList("Pos", 0.5d, 100.0d, 0.5d)
+                .setFloatList("Rotation", 180.0f, 0.0f)
+                .setString("Dimension", "minecraft:overworld")
+                .setLong("WorldUUIDMost", 0x1234abcd5678ef01L)
+                .setLong("WorldUUIDLeast", 0x9abc2345def06789L);
+        NbtPatch gameMode = new NbtPatch().setInt("playerGameType", 2);
+        gameMode.compound("bukkit").setInt("playerGameMode", 2);
+        teleportAndGameModePatch = teleport.merge(gameMode);
+        System.out.printf("%n[%s] 玩家文件: %s, %d 字节%n", profile, sample != null ? sample : "夹具", Files.size(datFile));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    /**
+     * 对应 teleportNBT + setGameModeNBT 的一次批量修改，关闭 streaming-patch 时的方式。
+     */
+    @Benchmark
+    public Map<String, Object> teleportAndGameMode() throws IOException {
+        Map<String, Object> root = readDat();
+        teleportAndGameModePatch.applyTo(FixtureNbt.target(root));
+        writeDat(root);
+        return root;
+    }
+
+    /**
+     * 与 teleportAndGameMode 相同的修改，通过 NbtPatch 边解压边改写，不构建 NBT 树。
+     */
+    @Benchmark
+    public void teleportAndGameModeStreamed() throws IOException {
+        AtomicFiles.write(datFile, out -> {
+            try (InputStream in = Files.newInputStream(datFile)) {
+                teleportAndGameModePatch.rewrite(in, out);
+            }
+        });
+    }
+
+    /**
+     * 对应 restorePlayerDataNBT: 替换背包和末影箱，并写回状态字段。
+     */
+    @Benchmark
+    public Map<String, Object> restoreInventory() throws IOException {
+        Map<String, Object> root = readDat();
+        root.put("Inventory", restoredInventory);
+        root.put("EnderItems", restoredEnderItems);
+        root.put("Health", 20.0f);
+        root.put("foodLevel", 20);
+        root.put("foodSaturationLevel", 5.0f);
+        root.put("XpLevel", 30);
+        root.put("XpP", 0.25f);
+        root.put("XpTotal", 1395);
+        root.put("playerGameType", 0);
+        writeDat(root);
+        return root;
+    }
+
+    private Map<String, Object> readDat() throws IOException {
+        try (InputStream in = new GZIPInputStream(new BufferedInputStream(Files.newInputStream(datFile)))) {
+            return FixtureNbt.read(in);
+        }
+    }
+
+    private void writeDat(Map<String, Object> root) throws IOException {
+        AtomicFiles.write(datFile, out -> {
+            GZIPOutputStream gzip = new GZIPOutputStream(out);
+            FixtureNbt.write(gzip, root);
+            gzip.finish();
+        });
+    }
+
+    private static Path findSample() throws IOException {
+        String property = System.getProperty("mgm.bench.playerdata");
+        if (property == null || property.isEmpty()) {
+            return null;
+        }
+        Path folder = Paths.get(property);
+        if (Files.isRegularFile(folder)) {
+            return folder;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(folder, "*.dat")) {
+            for (Path file : stream) {
+                return file;
+            }
+        }
+        throw new IOException("目录中没有玩家 .dat 文件: " + folder);
+    }
+}
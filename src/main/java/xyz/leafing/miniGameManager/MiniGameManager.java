@@ -5,15 +5,22 @@ import org.bukkit.plugin.java.JavaPlugin;
 import xyz.leafing.miniGameManager.api.MiniGameAPI;
 import xyz.leafing.miniGameManager.commands.MGMCommand;
 import xyz.leafing.miniGameManager.implementation.MiniGameServiceImpl;
+import xyz.leafing.miniGameManager.implementation.OfflineIoExecutor;
 import xyz.leafing.miniGameManager.listeners.PlayerConnectionListener;
+import xyz.leafing.miniGameManager.listeners.PluginLifecycleListener;
 import xyz.leafing.miniGameManager.utils.OfflinePlayerManager;
+import xyz.leafing.miniGameManager.utils.OperationMetrics;
+import xyz.leafing.miniGameManager.utils.RecoveryGate;
 
 import java.util.Objects;
+import java.util.UUID;
 
 public final class MiniGameManager extends JavaPlugin {
 
-    private MiniGameAPI api;
+    private MiniGameServiceImpl api;
     private OfflinePlayerManager offlinePlayerManager;
+    private final OperationMetrics metrics = new OperationMetrics();
+    private final RecoveryGate recoveryGate = new RecoveryGate();
 
     // 在 MiniGameManager.java 中
     @Override
@@ -26,6 +33,8 @@ public final class MiniGameManager extends JavaPlugin {
             return;
         }
 
+        saveDefaultConfig();
+
         this.offlinePlayerManager = new OfflinePlayerManager(this);
         this.api = new MiniGameServiceImpl(this, offlinePlayerManager);
 
@@ -39,44 +48,60 @@ public final class MiniGameManager extends JavaPlugin {
         // **--- 修改此处 ---**
         // 将 api 实例传递给监听器的构造函数
         getServer().getPluginManager().registerEvents(new PlayerConnectionListener(this, api, offlinePlayerManager), this);
+        getServer().getPluginManager().registerEvents(new PluginLifecycleListener(this, api), this);
         // **--- 修改结束 ---**
 
-        Objects.requireNonNull(getCommand("mgm")).setExecutor(new MGMCommand(api, this));
+        Objects.requireNonNull(getCommand("mgm")).setExecutor(new MGMCommand(api, this, offlinePlayerManager));
 
         getLogger().info("MiniGameManager 服务已成功加载并向服务器注册！");
     }
 
     @Override
     public void onDisable() {
-        // 插件卸载时，检查是否有正在进行的操作
-        if (offlinePlayerManager != null && offlinePlayerManager.hasActiveLocks()) {
-            getLogger().warning("-----------------------------------------------------");
-            getLogger().warning("警告：插件正在卸载，但仍有后台NBT操作在进行中！");
-            getLogger().warning("这可能发生在重载或服务器关闭期间。");
-            getLogger().warning("插件将尝试等待最多5秒以完成操作...");
-
-            long startTime = System.currentTimeMillis();
-            while (offlinePlayerManager.hasActiveLocks() && (System.currentTimeMillis() - startTime < 5000)) {
-                try {
-                    //noinspection BusyWait
-                    Thread.sleep(100);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+        if (api != null) {
+            // 插件卸载时，检查是否有正在进行的操作
+            OfflineIoExecutor offlineExecutor = api.getOfflineExecutor();
+            boolean busy = offlineExecutor.getInFlight() + offlineExecutor.getQueued() > 0;
+            if (busy) {
+                getLogger().warning("-----------------------------------------------------");
+                getLogger().warning("警告：插件正在卸载，但仍有后台NBT操作在进行中！");
+                getLogger().warning("这可能发生在重载或服务器关闭期间。");
+                getLogger().warning("执行中: " + offlineExecutor.getInFlight() + "，排队中: " + offlineExecutor.getQueued());
+                getLogger().warning("插件将尝试等待最多5秒以完成操作...");
             }
 
-            if (offlinePlayerManager.hasActiveLocks()) {
+            boolean drained = api.shutdown();
+
+            if (!drained) {
                 getLogger().severe("等待超时！仍有未完成的操作。");
-                getLogger().severe("以下玩家的数据可能处于不稳定状态: " + offlinePlayerManager.getLockedPlayerUUIDs());
-                getLogger().severe("建议检查对应的 playerdata 文件和 .bak 备份文件。");
-            } else {
+                if (offlinePlayerManager != null) {
+                    getLogger().severe("以下玩家的数据可能处于不稳定状态: " + offlinePlayerManager.getLockedPlayerUUIDs());
+                }
+                getLogger().severe("未完成的写入不会覆盖原文件，但这些操作的修改可能已丢失。");
+            } else if (busy) {
                 getLogger().info("所有后台操作已成功完成。");
             }
-            getLogger().warning("-----------------------------------------------------");
+            if (busy) {
+                getLogger().warning("-----------------------------------------------------");
+            }
         }
 
         getServer().getServicesManager().unregisterAll(this);
         getLogger().info("MiniGameManager 插件已卸载。");
     }
-}
\ No newline at end of file
+
+    public OperationMetrics getMetrics() {
+        return metrics;
+    }
+
+    public RecoveryGate getRecoveryGate() {
+        return recoveryGate;
+    }
+
+    /**
+     * 玩家当前所在小游戏的插件名，不在游戏中时返回空字符串。用于诊断事件。
+     */
+    public String getOwningPluginName(UUID uuid) {
+        return api == null ? "" : api.getOwningPlugin(uuid).map(JavaPlugin::getName).orElse("");
+    }
+}
@@ -5,8 +5,14 @@ import org.bukkit.GameMode;
 import org.bukkit.Location;
 import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
+import xyz.leafing.miniGameManager.utils.Kit;
+import xyz.leafing.miniGameManager.utils.LazySnapshot;
+import xyz.leafing.miniGameManager.utils.PlayerDataSnapshot;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -15,6 +21,17 @@ public interface MiniGameAPI {
     // --- 游戏状态管理 ---
     boolean enterGame(Player player, JavaPlugin sourcePlugin);
 
+    /**
+     * 为整个大厅的玩家保存数据快照并将他们标记为“游戏中”。
+     * 登记是原子的：只要有一名玩家已在其他游戏中，整批都不会被登记。
+     * 快照捕获在主线程工作队列中进行，按每 tick 的时间预算分摊到多个 tick 上。
+     *
+     * @param players      要进入游戏的在线玩家
+     * @param sourcePlugin 调用此方法的小游戏插件实例
+     * @return 所有快照都已写入磁盘时完成的 future；登记失败或任一快照保存失败时结果为 false
+     */
+    CompletableFuture<Boolean> enterGameBatch(Collection<Player> players, JavaPlugin sourcePlugin);
+
     /**
      * 将一个玩家从“游戏中”状态释放，无论玩家是否在线。
      * 只有将玩家标记为“游戏中”的同一个插件才能释放该玩家，以防止冲突。
@@ -25,17 +42,114 @@ public interface MiniGameAPI {
      */
     boolean leaveGame(UUID playerUUID, JavaPlugin sourcePlugin);
 
+    /**
+     * 获取某个小游戏插件当前登记的所有玩家，包括已离线的玩家。
+     *
+     * @return 玩家 UUID 的不可变副本
+     */
+    Set<UUID> getPlayers(JavaPlugin sourcePlugin);
+
+    /**
+     * 一次性释放某个小游戏插件登记的所有玩家，适合在游戏结束或插件卸载时调用。
+     * 不会恢复玩家数据，需要时请对返回的玩家调用 {@link #restorePlayerData(UUID)}。
+     *
+     * @return 被释放的玩家 UUID
+     */
+    Set<UUID> leaveAll(JavaPlugin sourcePlugin);
+
     boolean isInGame(Player player);
     Optional<JavaPlugin> getOwningPlugin(Player player);
 
     // --- 玩家数据备份与恢复 ---
+    /**
+     * 同步保存玩家数据，会阻塞直到快照写入磁盘。
+     * 新代码建议使用 {@link #savePlayerDataAsync(Player)}。
+     */
     boolean savePlayerData(Player player);
+
+    /**
+     * 在主线程上复制玩家当前状态，序列化和写盘在后台完成。
+     * 必须在主线程调用。
+     *
+     * @param player 要保存的在线玩家
+     * @return 快照持久化后完成的 future，结果表示是否保存成功
+     */
+    CompletableFuture<Boolean> savePlayerDataAsync(Player player);
     CompletableFuture<Boolean> restorePlayerData(UUID playerUUID);
+
+    /**
+     * 只恢复快照中选定的区段，玩家的其他数据保持不变，例如只归还背包而保留游戏中的状态。
+     * 快照在后台只解码这些区段；恢复成功后这些区段从快照中移除，未选定的区段保留，之后仍可恢复。
+     * 所有区段都恢复后快照被删除，{@link #hasPendingData(UUID)} 才变为 false。
+     *
+     * @param sections 要恢复的区段，不能为空；之前已经恢复过的区段会被跳过
+     * @return 完成时结果表示是否恢复成功；没有待恢复的数据或选定的区段都已恢复过时为 false
+     */
+    CompletableFuture<Boolean> restorePlayerData(UUID playerUUID, Set<SnapshotSection> sections);
+
+    /**
+     * 在后台读取玩家的快照但不恢复也不删除它。返回时只解析了区段表，
+     * 各区段在第一次访问时才解码，因此不要在主线程上访问尚未解码的区段。
+     * 只恢复过一部分的快照不再包含已恢复的区段，见 {@link LazySnapshot#getSections()}。
+     *
+     * @return 没有待恢复的数据时为 empty
+     */
+    CompletableFuture<Optional<LazySnapshot>> readSnapshot(UUID playerUUID);
     boolean hasPendingData(UUID uuid);
 
     // --- 玩家数据修改 ---
     CompletableFuture<Boolean> setGameMode(UUID playerUUID, GameMode gameMode);
     CompletableFuture<Boolean> teleport(UUID playerUUID, Location location);
+
+    /**
+     * 将一组玩家传送到出生点，适合游戏开始时分散进场或结束后送回大厅。
+     * 在线玩家的目标区块先全部异步加载，再在主线程上调用 teleportAsync，不会因为加载区块卡住服务器；
+     * 离线玩家每人通过一次离线修改写入新位置。
+     *
+     * @param playerUUIDs 要传送的玩家，在线和离线均可
+     * @param spawnPoints 出生点，按玩家顺序轮流分配；只有一个时所有人传送到同一位置
+     * @return 所有玩家都处理完毕时完成的 future；任一玩家传送失败时结果为 false
+     */
+    CompletableFuture<Boolean> teleportBatch(Collection<UUID> playerUUIDs, List<Location> spawnPoints);
     void clearPlayerData(Player player);
     CompletableFuture<Boolean> clearFullPlayerData(UUID playerUUID);
+
+    // --- 装备包 ---
+    /**
+     * 注册装备包并缓存到 kits/&lt;id&gt;.bin，同名装备包会被替换。插件重启后已注册的装备包会自动载入。
+     *
+     * @param kitId    装备包 ID，只能包含字母、数字、下划线和连字符
+     * @param contents 装备包内容，与玩家快照的格式相同；物品会被复制一次，之后所有玩家共用
+     */
+    Kit registerKit(String kitId, PlayerDataSnapshot contents);
+
+    /**
+     * 以玩家当前的背包、末影箱、药水效果和状态注册装备包。必须在主线程调用。
+     */
+    Kit registerKit(String kitId, Player template);
+
+    Optional<Kit> getKit(String kitId);
+
+    Set<String> getKitIds();
+
+    boolean removeKit(String kitId);
+
+    /**
+     * 清空一批玩家并发放同一个装备包，适合游戏开始时为整个大厅准备。
+     * 每名玩家是主线程工作队列中的一个任务，按每 tick 的时间预算分摊；不会保存快照，需要时先调用 {@link #enterGameBatch}。
+     *
+     * @return 所有玩家都处理完毕时完成的 future；任一玩家已离线或发放失败时结果为 false
+     * @throws IllegalArgumentException 装备包不存在时
+     */
+    CompletableFuture<Boolean> prepareForGame(Collection<Player> players, String kitId);
+
+    /**
+     * 创建一组针对单个玩家的修改，例如将掉线玩家送回大厅：
+     * {@code editOffline(uuid).restorePendingData().teleport(lobby).gameMode(GameMode.ADVENTURE).commit()}。
+     * 离线玩家的所有修改只产生一次文件读写。
+     *
+     * @param playerUUID 要修改的玩家
+     * @return 尚未提交的修改
+     */
+    OfflineEdit editOffline(UUID playerUUID);
 }
\ No newline at end of file
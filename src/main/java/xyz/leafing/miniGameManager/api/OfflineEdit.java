@@ -0,0 +1,54 @@
+package xyz.leafing.miniGameManager.api;
+
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import xyz.leafing.miniGameManager.utils.PlayerDataSnapshot;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 对单个玩家的一组修改，在 {@link #commit()} 时按添加顺序一次性应用。
+ * 离线玩家的 .dat 文件只会被读取、修改和写入一次；
+ * 如果提交时玩家在线，则改为在主线程上依次应用到玩家身上。
+ */
+public interface OfflineEdit {
+
+    /**
+     * 用给定快照覆盖玩家的背包、末影箱、药水效果和状态。
+     */
+    OfflineEdit restore(PlayerDataSnapshot snapshot);
+
+    /**
+     * 恢复玩家待恢复的数据快照，提交成功后删除该快照。
+     * 如果玩家没有待恢复的数据，提交将失败。
+     */
+    OfflineEdit restorePendingData();
+
+    /**
+     * 只恢复待恢复快照中选定的区段，提交成功后从快照中移除这些区段，未选定的区段保留在快照中，之后仍可恢复；
+     * 所有区段都恢复后快照被删除。之前已经恢复过的区段会被跳过。
+     * 如果玩家没有待恢复的数据，或选定的区段都已恢复过，提交将失败。
+     */
+    OfflineEdit restorePendingData(Set<SnapshotSection> sections);
+
+    /**
+     * 玩家在线时与 {@link MiniGameAPI#teleport} 相同，先异步加载目标区块再传送；
+     * {@link #commit()} 返回的 future 在传送完成后才完成，之后的修改也在传送完成后才应用。
+     */
+    OfflineEdit teleport(Location location);
+
+    OfflineEdit gameMode(GameMode gameMode);
+
+    /**
+     * 清空背包、末影箱、药水效果和经验。
+     */
+    OfflineEdit clearFullData();
+
+    /**
+     * 应用所有修改。同一个 OfflineEdit 只能提交一次。
+     *
+     * @return 完成时结果表示是否全部修改都已成功应用
+     */
+    CompletableFuture<Boolean> commit();
+}
@@ -0,0 +1,24 @@
+package xyz.leafing.miniGameManager.api;
+
+/**
+ * 快照中可以单独读取和恢复的部分。
+ */
+public enum SnapshotSection {
+    /**
+     * 主背包（含快捷栏）和副手
+     */
+    INVENTORY,
+    /**
+     * 盔甲栏
+     */
+    ARMOR,
+    ENDER_CHEST,
+    /**
+     * 药水效果
+     */
+    EFFECTS,
+    /**
+     * 生命值、最大生命值、饱食度、经验、游戏模式和飞行状态
+     */
+    STATS
+}
@@ -7,21 +7,44 @@ import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitTask;
 import org.jetbrains.annotations.NotNull;
 import xyz.leafing.miniGameManager.MiniGameManager;
-import xyz.leafing.miniGameManager.api.MiniGameAPI;
+import xyz.leafing.miniGameManager.implementation.BulkRestore;
+import xyz.leafing.miniGameManager.implementation.ItemBlobStore;
+import xyz.leafing.miniGameManager.implementation.MainThreadExecutor;
+import xyz.leafing.miniGameManager.implementation.MiniGameServiceImpl;
+import xyz.leafing.miniGameManager.implementation.OfflineIoExecutor;
+import xyz.leafing.miniGameManager.utils.AtomicFiles;
+import xyz.leafing.miniGameManager.utils.OfflinePlayerManager;
+import xyz.leafing.miniGameManager.utils.OperationMetrics;
+import xyz.leafing.miniGameManager.utils.PlayerLockManager;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 
 public class MGMCommand implements CommandExecutor {
 
-    private final MiniGameAPI api;
+    private static final long RESTORE_PROGRESS_INTERVAL_TICKS = 40L;
+
+    private final MiniGameServiceImpl api;
     private final MiniGameManager plugin;
+    private final OfflinePlayerManager offlineManager;
+    private BulkRestore runningRestore;
 
-    public MGMCommand(MiniGameAPI api, MiniGameManager plugin) {
+    public MGMCommand(MiniGameServiceImpl api, MiniGameManager plugin, OfflinePlayerManager offlineManager) {
         this.api = api;
         this.plugin = plugin;
+        this.offlineManager = offlineManager;
     }
 
     @Override
@@ -31,6 +54,21 @@ public class MGMCommand implements CommandExecutor {
             return true;
         }
 
+        if (args.length >= 1 && args[0].equalsIgnoreCase("stats")) {
+            if (args.length >= 2 && args[1].equalsIgnoreCase("reset")) {
+                resetStats();
+                sender.sendMessage(Component.text("统计数据已重置。", NamedTextColor.GREEN));
+            } else {
+                sendStats(sender);
+            }
+            return true;
+        }
+
+        if (args.length >= 1 && args[0].equalsIgnoreCase("restore-all")) {
+            restoreAll(sender);
+            return true;
+        }
+
         if (args.length < 2) {
             sendUsage(sender);
             return true;
@@ -128,6 +166,133 @@ public class MGMCommand implements CommandExecutor {
         sender.sendMessage(Component.text("/mgm restore <玩家> - 恢复玩家数据 (在线/离线)", NamedTextColor.YELLOW));
         sender.sendMessage(Component.text("/mgm setgamemode <玩家> <模式> - 设置游戏模式 (在线/离线)", NamedTextColor.YELLOW));
         sender.sendMessage(Component.text("/mgm teleport <玩家> <x> <y> <z> [世界] - 传送 (在线/离线)", NamedTextColor.YELLOW));
+        sender.sendMessage(Component.text("/mgm restore-all - 恢复所有待恢复的玩家数据 (在线/离线)", NamedTextColor.YELLOW));
+        sender.sendMessage(Component.text("/mgm stats [reset] - 查看或重置性能统计", NamedTextColor.YELLOW));
+    }
+
+    private void restoreAll(CommandSender sender) {
+        if (runningRestore != null && !runningRestore.isDone()) {
+            sender.sendMessage(Component.text(String.format("已有批量恢复正在进行: %d/%d",
+                    runningRestore.getCompleted(), runningRestore.getTotal()), NamedTextColor.YELLOW));
+            return;
+        }
+        if (!plugin.getRecoveryGate().isFinished()) {
+            sender.sendMessage(Component.text("启动恢复扫描尚未完成，待恢复列表还不完整，请稍后再试。", NamedTextColor.YELLOW));
+            return;
+        }
+        Set<UUID> pending = api.getPendingPlayers();
+        if (pending.isEmpty()) {
+            sender.sendMessage(Component.text("没有待恢复的玩家数据。", NamedTextColor.YELLOW));
+            return;
+        }
+
+        BulkRestore restore = api.restoreAll(pending);
+        runningRestore = restore;
+        sender.sendMessage(Component.text("开始批量恢复 " + restore.getTotal() + " 名玩家的数据，并发数 "
+                + api.getOfflineExecutor().getMaxConcurrency() + "...", NamedTextColor.GRAY));
+
+        BukkitTask progressTask = Bukkit.getScheduler().runTaskTimer(plugin, () -> {
+            if (!restore.isDone()) {
+                sender.sendMessage(Component.text(String.format("恢复进度: %d/%d, 成功 %d, 失败 %d, 跳过 %d, %.1f 个/秒",
+                        restore.getCompleted(), restore.getTotal(), restore.getSucceeded(), restore.getFailures().size(),
+                        restore.getSkipped().size(), restore.getThroughput()), NamedTextColor.GRAY));
+            }
+        }, RESTORE_PROGRESS_INTERVAL_TICKS, RESTORE_PROGRESS_INTERVAL_TICKS);
+
+        restore.future().thenAccept(done -> {
+            // 失败清单在后台写入，避免在主线程上做文件 IO
+            File report = done.getFailures().isEmpty() ? null : writeFailureReport(done);
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                progressTask.cancel();
+                sender.sendMessage(Component.text(String.format("批量恢复完成: %d/%d 成功, 用时 %.1f 秒, %.1f 个/秒",
+                        done.getSucceeded(), done.getTotal(), done.getElapsedNanos() / 1_000_000_000.0, done.getThroughput()),
+                        done.getFailures().isEmpty() ? NamedTextColor.GREEN : NamedTextColor.YELLOW));
+                if (!done.getSkipped().isEmpty()) {
+                    sender.sendMessage(Component.text("跳过 " + done.getSkipped().size()
+                            + " 名仍在游戏中的玩家，他们的数据将在游戏结束时由小游戏插件恢复。", NamedTextColor.YELLOW));
+                }
+                if (!done.getFailures().isEmpty()) {
+                    sender.sendMessage(Component.text(done.getFailures().size() + " 名玩家恢复失败，清单已写入 "
+                            + (report != null ? report.getPath() : "服务器日志"), NamedTextColor.RED));
+                }
+            });
+        });
+    }
+
+    private File writeFailureReport(BulkRestore restore) {
+        String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+        File report = new File(plugin.getDataFolder(), "restore-failures-" + timestamp + ".txt");
+        List<String> lines = new ArrayList<>();
+        lines.add("# 批量恢复失败清单 " + timestamp);
+        lines.add(String.format("# 总数 %d, 成功 %d, 失败 %d, 跳过 (游戏中) %d", restore.getTotal(), restore.getSucceeded(),
+                restore.getFailures().size(), restore.getSkipped().size()));
+        lines.add("# UUID\t玩家名\t原因");
+        for (BulkRestore.Failure failure : restore.getFailures()) {
+            String name = Bukkit.getOfflinePlayer(failure.playerUUID()).getName();
+            lines.add(failure.playerUUID() + "\t" + (name != null ? name : "?") + "\t" + failure.reason());
+        }
+        try {
+            AtomicFiles.write(report.toPath(), String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+            return report;
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "写入批量恢复失败清单失败，清单如下:\n" + String.join("\n", lines), e);
+            return null;
+        }
+    }
+
+    private void sendStats(CommandSender sender) {
+        sender.sendMessage(Component.text("--- MiniGameManager 统计 ---", NamedTextColor.GOLD));
+        OperationMetrics metrics = plugin.getMetrics();
+        for (OperationMetrics.Operation operation : OperationMetrics.Operation.values()) {
+            OperationMetrics.Summary summary = metrics.summarize(operation);
+            sender.sendMessage(Component.text(String.format("%s: %d 次 (失败 %d), p50 %s, p99 %s, 最长 %s, 读 %s, 写 %s",
+                    operation.getDisplayName(), summary.count(), summary.failures(),
+                    formatMillis(summary.p50Nanos()), formatMillis(summary.p99Nanos()), formatMillis(summary.maxNanos()),
+                    formatBytes(summary.bytesRead()), formatBytes(summary.bytesWritten())),
+                    summary.failures() > 0 ? NamedTextColor.RED : NamedTextColor.YELLOW));
+        }
+
+        MainThreadExecutor mainThread = api.getMainThreadExecutor();
+        sender.sendMessage(Component.text(String.format("主线程队列: 排队 %d, 上一 tick 执行 %d 个任务, 用时 %s / 预算 %s (%.0f%%), 峰值 %s",
+                mainThread.getQueueDepth(), mainThread.getLastTickProcessed(),
+                formatMillis(mainThread.getLastTickUsedNanos()), formatMillis(mainThread.getBudgetNanos()),
+                mainThread.getLastTickBudgetUsage() * 100, formatMillis(mainThread.getMaxTickUsedNanos())), NamedTextColor.YELLOW));
+
+        OfflineIoExecutor offlineExecutor = api.getOfflineExecutor();
+        sender.sendMessage(Component.text(String.format("离线执行器: 执行中 %d, 排队 %d",
+                offlineExecutor.getInFlight(), offlineExecutor.getQueued()), NamedTextColor.YELLOW));
+
+        PlayerLockManager locks = offlineManager.getLockManager();
+        sender.sendMessage(Component.text(String.format("玩家锁: 获取 %d 次, 超时 %d, 平均等待 %s, 最长等待 %s",
+                locks.getAcquisitions(), locks.getTimeouts(),
+                formatMillis((long) locks.getAverageWaitNanos()), formatMillis(locks.getMaxWaitNanos())), NamedTextColor.YELLOW));
+
+        ItemBlobStore itemStore = api.getItemStore();
+        sender.sendMessage(Component.text(String.format("物品去重: %d 个物品, 占用 %s, 已节省 %s",
+                itemStore.getBlobCount(), formatBytes(itemStore.getStoredBytes()), formatBytes(itemStore.getDedupSavedBytes())), NamedTextColor.YELLOW));
+        if (itemStore.isShared()) {
+            sender.sendMessage(Component.text("  共享存储: 以上只统计本服务端的引用和写入；不再被引用的物品文件不会被回收", NamedTextColor.GRAY));
+        }
+    }
+
+    private void resetStats() {
+        plugin.getMetrics().reset();
+        offlineManager.getLockManager().resetMetrics();
+        api.getMainThreadExecutor().resetMaxTickUsed();
+    }
+
+    private static String formatMillis(long nanos) {
+        return String.format("%.2fms", nanos / 1_000_000.0);
+    }
+
+    private static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
     }
 
     private void handleFuture(CompletableFuture<Boolean> future, CommandSender sender, String successMsg, String failMsg) {
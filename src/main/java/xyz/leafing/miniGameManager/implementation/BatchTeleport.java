@@ -0,0 +1,140 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import xyz.leafing.miniGameManager.MiniGameManager;
+import xyz.leafing.miniGameManager.api.OfflineEdit;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+/**
+ * 将一组玩家传送到若干出生点。
+ * 在线玩家的目标区块先一起通过 Paper 的异步区块加载预先载入，并加上插件区块票据，防止在传送前被卸载；
+ * 全部载入后再为每名玩家调用 teleportAsync，此时区块已在内存中，传送不会让主线程等待磁盘或区块生成。
+ * 离线玩家不需要区块，每人通过一次离线修改写入新位置。
+ */
+class BatchTeleport {
+
+    private record ChunkKey(World world, int x, int z) {
+    }
+
+    private final MiniGameManager plugin;
+    private final MainThreadExecutor mainThread;
+    private final Function<UUID, OfflineEdit> offlineEditor;
+    private final Map<UUID, Location> destinations = new LinkedHashMap<>();
+
+    /**
+     * @param spawnPoints 按玩家顺序轮流分配的出生点
+     */
+    BatchTeleport(MiniGameManager plugin, MainThreadExecutor mainThread, Function<UUID, OfflineEdit> offlineEditor,
+                  Collection<UUID> playerUUIDs, List<Location> spawnPoints) {
+        if (spawnPoints.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个出生点");
+        }
+        for (Location location : spawnPoints) {
+            if (location.getWorld() == null) {
+                throw new IllegalArgumentException("出生点没有所在世界: " + location);
+            }
+        }
+        this.plugin = plugin;
+        this.mainThread = mainThread;
+        this.offlineEditor = offlineEditor;
+        int index = 0;
+        for (UUID uuid : playerUUIDs) {
+            if (!destinations.containsKey(uuid)) {
+                destinations.put(uuid, spawnPoints.get(index++ % spawnPoints.size()).clone());
+            }
+        }
+    }
+
+    /**
+     * @return 所有玩家都处理完毕时完成的 future；任一玩家传送失败时结果为 false
+     */
+    CompletableFuture<Boolean> start() {
+        Map<UUID, Location> online = new LinkedHashMap<>();
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        destinations.forEach((uuid, location) -> {
+            Player player = Bukkit.getPlayer(uuid);
+            if (player != null && player.isOnline()) {
+                online.put(uuid, location);
+            } else {
+                results.add(guard(uuid, teleportOffline(uuid, location)));
+            }
+        });
+        if (!online.isEmpty()) {
+            results.add(teleportOnline(online));
+        }
+        return allSucceeded(results);
+    }
+
+    private CompletableFuture<Boolean> teleportOnline(Map<UUID, Location> players) {
+        Set<ChunkKey> chunks = new LinkedHashSet<>();
+        for (Location location : players.values()) {
+            chunks.add(new ChunkKey(location.getWorld(), location.getBlockX() >> 4, location.getBlockZ() >> 4));
+        }
+        // 票据必须在主线程添加；加载请求一次全部发出，由 Paper 在后台并行完成
+        return mainThread.supply(() -> {
+            List<CompletableFuture<?>> loads = new ArrayList<>(chunks.size());
+            for (ChunkKey chunk : chunks) {
+                chunk.world().addPluginChunkTicket(chunk.x(), chunk.z(), plugin);
+                loads.add(chunk.world().getChunkAtAsync(chunk.x(), chunk.z()).exceptionally(error -> {
+                    // 预加载失败不影响传送，teleportAsync 会自行加载区块
+                    plugin.getLogger().log(Level.WARNING, "预加载区块 " + chunk.world().getName() + " ("
+                            + chunk.x() + ", " + chunk.z() + ") 失败", error);
+                    return null;
+                }));
+            }
+            return CompletableFuture.allOf(loads.toArray(new CompletableFuture[0]));
+        }).thenCompose(loads -> loads).thenCompose(loaded -> {
+            // 每名玩家一个任务，由主线程队列按 tick 预算分摊
+            List<CompletableFuture<Boolean>> teleports = new ArrayList<>(players.size());
+            players.forEach((uuid, location) -> teleports.add(guard(uuid,
+                    mainThread.supply(() -> teleportLoaded(uuid, location)).thenCompose(teleport -> teleport))));
+            return allSucceeded(teleports);
+        }).whenComplete((success, error) -> mainThread.execute(() -> {
+            for (ChunkKey chunk : chunks) {
+                chunk.world().removePluginChunkTicket(chunk.x(), chunk.z(), plugin);
+            }
+        })).exceptionally(error -> {
+            plugin.getLogger().log(Level.WARNING, "批量传送在线玩家时发生错误", error);
+            return false;
+        });
+    }
+
+    private CompletableFuture<Boolean> teleportLoaded(UUID uuid, Location location) {
+        Player player = Bukkit.getPlayer(uuid);
+        if (player == null || !player.isOnline()) {
+            // 等待区块期间下线的玩家改为修改其 .dat
+            return teleportOffline(uuid, location);
+        }
+        return player.teleportAsync(location);
+    }
+
+    private CompletableFuture<Boolean> teleportOffline(UUID uuid, Location location) {
+        return offlineEditor.apply(uuid).teleport(location).commit();
+    }
+
+    private CompletableFuture<Boolean> guard(UUID uuid, CompletableFuture<Boolean> teleport) {
+        return teleport.exceptionally(error -> {
+            plugin.getLogger().log(Level.WARNING, "传送玩家 " + uuid + " 时发生错误", error);
+            return false;
+        });
+    }
+
+    private static CompletableFuture<Boolean> allSucceeded(List<CompletableFuture<Boolean>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> futures.stream().allMatch(CompletableFuture::join));
+    }
+}
@@ -0,0 +1,151 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * 一次批量恢复的进度。最多同时进行 parallelism 个恢复，完成一个才开始下一个，
+ * 这样数百个快照也不会超出离线执行器的排队上限。
+ * 每条并行通道是一个虚拟线程，顺序等待自己领取的恢复完成，不会占用主线程。
+ */
+public class BulkRestore {
+
+    public record Failure(UUID playerUUID, String reason) {
+    }
+
+    private final Iterator<UUID> remaining;
+    private final int total;
+    private final Predicate<UUID> skip;
+    private final Function<UUID, CompletableFuture<Boolean>> restorer;
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger succeeded = new AtomicInteger();
+    private final List<Failure> failures = new ArrayList<>();
+    private final List<UUID> skipped = new ArrayList<>();
+    private final CompletableFuture<BulkRestore> future = new CompletableFuture<>();
+    private long startNanos;
+    private volatile long endNanos;
+
+    /**
+     * @param skip 轮到某名玩家时为 true 则跳过，不恢复也不计为失败
+     */
+    BulkRestore(Collection<UUID> playerUUIDs, Predicate<UUID> skip, Function<UUID, CompletableFuture<Boolean>> restorer) {
+        List<UUID> players = List.copyOf(playerUUIDs);
+        this.remaining = players.iterator();
+        this.total = players.size();
+        this.skip = skip;
+        this.restorer = restorer;
+    }
+
+    BulkRestore start(int parallelism) {
+        startNanos = System.nanoTime();
+        if (total == 0) {
+            endNanos = startNanos;
+            future.complete(this);
+            return this;
+        }
+        int lanes = Math.max(1, Math.min(parallelism, total));
+        AtomicInteger running = new AtomicInteger(lanes);
+        for (int i = 0; i < lanes; i++) {
+            Thread.ofVirtual().name("MiniGameManager-Restore-" + i).start(() -> {
+                UUID uuid;
+                while ((uuid = next()) != null) {
+                    restoreOne(uuid);
+                }
+                if (running.decrementAndGet() == 0) {
+                    endNanos = System.nanoTime();
+                    future.complete(this);
+                }
+            });
+        }
+        return this;
+    }
+
+    private UUID next() {
+        synchronized (remaining) {
+            return remaining.hasNext() ? remaining.next() : null;
+        }
+    }
+
+    private void restoreOne(UUID uuid) {
+        if (skip.test(uuid)) {
+            synchronized (skipped) {
+                skipped.add(uuid);
+            }
+            completed.incrementAndGet();
+            return;
+        }
+        try {
+            if (restorer.apply(uuid).join()) {
+                succeeded.incrementAndGet();
+            } else {
+                addFailure(uuid, "恢复失败，详见服务器日志");
+            }
+        } catch (Exception e) {
+            addFailure(uuid, String.valueOf(e.getCause() != null ? e.getCause() : e));
+        }
+        completed.incrementAndGet();
+    }
+
+    private void addFailure(UUID uuid, String reason) {
+        synchronized (failures) {
+            failures.add(new Failure(uuid, reason));
+        }
+    }
+
+    /**
+     * @return 所有玩家都处理完毕时完成的 future
+     */
+    public CompletableFuture<BulkRestore> future() {
+        return future;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getCompleted() {
+        return completed.get();
+    }
+
+    public int getSucceeded() {
+        return succeeded.get();
+    }
+
+    public List<Failure> getFailures() {
+        synchronized (failures) {
+            return List.copyOf(failures);
+        }
+    }
+
+    /**
+     * @return 被跳过的玩家
+     */
+    public List<UUID> getSkipped() {
+        synchronized (skipped) {
+            return List.copyOf(skipped);
+        }
+    }
+
+    public boolean isDone() {
+        return future.isDone();
+    }
+
+    public long getElapsedNanos() {
+        return (isDone() ? endNanos : System.nanoTime()) - startNanos;
+    }
+
+    /**
+     * @return 平均每秒完成的恢复数
+     */
+    public double getThroughput() {
+        long elapsed = getElapsedNanos();
+        return elapsed <= 0 ? 0 : completed.get() * 1_000_000_000.0 / elapsed;
+    }
+}
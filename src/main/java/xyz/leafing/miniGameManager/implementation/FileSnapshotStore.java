@@ -0,0 +1,266 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import xyz.leafing.miniGameManager.utils.AtomicFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 每个玩家一个 {@code <uuid>.bin} 文件，每次写入都通过 {@link AtomicFiles} 单独落盘。
+ * <p>
+ * 文件可以直接放在目录中（{@link Layout#FLAT}），也可以按 UUID 前缀分到 {@code ab/cd/<uuid>.bin}
+ * 两级子目录中（{@link Layout#SHARDED}），玩家很多时单个目录不会有数万个条目。
+ * 切换布局后，旧布局中的文件由 {@link LayoutMigration} 在后台移到当前布局；在此之前读取会依次查找两种布局，
+ * 写入和删除会顺带清理旧布局中的文件，因此迁移期间不需要停服。
+ */
+public class FileSnapshotStore implements SnapshotStore {
+
+    public static final String NAME = "file";
+    private static final String SUFFIX = ".bin";
+    private static final int LOCK_STRIPES = 64;
+
+    public enum Layout {
+        FLAT,
+        SHARDED
+    }
+
+    private final Path folder;
+    private final Layout layout;
+    private final Layout fallbackLayout;
+    // 同一玩家的写入、删除和迁移互斥，否则迁移可能用旧文件覆盖新快照，或让已删除的快照重新出现
+    private final Object[] locks = new Object[LOCK_STRIPES];
+    // 确认旧布局中已没有文件后关闭回退查找
+    private volatile boolean fallback = true;
+
+    public FileSnapshotStore(File folder, Layout layout) throws IOException {
+        this.folder = folder.toPath();
+        this.layout = layout;
+        this.fallbackLayout = layout == Layout.FLAT ? Layout.SHARDED : Layout.FLAT;
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        Files.createDirectories(this.folder);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    public Layout getLayout() {
+        return layout;
+    }
+
+    @Override
+    public void save(UUID uuid, byte[] data) throws IOException {
+        Path target = pathOf(uuid, layout);
+        synchronized (lockOf(uuid)) {
+            createParent(target);
+            AtomicFiles.write(target, data);
+            if (fallback) {
+                Files.deleteIfExists(pathOf(uuid, fallbackLayout));
+            }
+        }
+    }
+
+    @Override
+    public void saveAll(Map<UUID, byte[]> snapshots) throws IOException {
+        for (Map.Entry<UUID, byte[]> entry : snapshots.entrySet()) {
+            save(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return 1;
+    }
+
+    @Override
+    public byte[] load(UUID uuid) throws IOException {
+        byte[] data = read(pathOf(uuid, layout));
+        if (data != null || !fallback) {
+            return data;
+        }
+        data = read(pathOf(uuid, fallbackLayout));
+        // 迁移只会把文件从旧布局移到当前布局，两次都没读到时再查一次当前布局，避免恰好错过一次移动
+        return data != null ? data : read(pathOf(uuid, layout));
+    }
+
+    @Override
+    public boolean exists(UUID uuid) {
+        Path current = pathOf(uuid, layout);
+        return Files.exists(current)
+                || fallback && (Files.exists(pathOf(uuid, fallbackLayout)) || Files.exists(current));
+    }
+
+    @Override
+    public boolean delete(UUID uuid) throws IOException {
+        synchronized (lockOf(uuid)) {
+            boolean deleted = Files.deleteIfExists(pathOf(uuid, layout));
+            if (fallback) {
+                deleted |= Files.deleteIfExists(pathOf(uuid, fallbackLayout));
+            }
+            return deleted;
+        }
+    }
+
+    @Override
+    public Set<UUID> list() throws IOException {
+        Set<UUID> players = list(layout);
+        if (fallback) {
+            players.addAll(list(fallbackLayout));
+        }
+        return players;
+    }
+
+    /**
+     * @return 仍按另一种布局存放的玩家
+     */
+    Set<UUID> listMisplaced() throws IOException {
+        return list(fallbackLayout);
+    }
+
+    /**
+     * 把一个仍按另一种布局存放的快照移到当前布局。当前布局中已有该玩家的快照时，它一定更新，旧文件直接删除。
+     *
+     * @return 是否移动或删除了旧文件
+     */
+    boolean relocate(UUID uuid) throws IOException {
+        Path source = pathOf(uuid, fallbackLayout);
+        Path target = pathOf(uuid, layout);
+        synchronized (lockOf(uuid)) {
+            if (!Files.exists(source)) {
+                return false;
+            }
+            if (Files.exists(target)) {
+                Files.delete(source);
+                return true;
+            }
+            createParent(target);
+            try {
+                Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(source, target);
+            }
+            AtomicFiles.syncDirectory(target.getParent());
+            AtomicFiles.syncDirectory(source.getParent());
+            return true;
+        }
+    }
+
+    /**
+     * 旧布局中的文件已全部迁移，之后的读写不再查找旧布局。
+     * 从分片布局迁回平铺布局时顺带删除空的分片目录。
+     */
+    void finishMigration() throws IOException {
+        fallback = false;
+        if (fallbackLayout != Layout.SHARDED) {
+            return;
+        }
+        for (Path outer : listShards(folder)) {
+            for (Path inner : listShards(outer)) {
+                deleteIfEmpty(inner);
+            }
+            deleteIfEmpty(outer);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private Object lockOf(UUID uuid) {
+        return locks[(uuid.hashCode() & 0x7FFFFFFF) % LOCK_STRIPES];
+    }
+
+    private Path pathOf(UUID uuid, Layout layout) {
+        String name = uuid + SUFFIX;
+        if (layout == Layout.FLAT) {
+            return folder.resolve(name);
+        }
+        return folder.resolve(name.substring(0, 2)).resolve(name.substring(2, 4)).resolve(name);
+    }
+
+    /**
+     * 分片目录不存在时创建，并同步上级目录，保证新目录本身也已落盘。
+     */
+    private void createParent(Path file) throws IOException {
+        Path parent = file.getParent();
+        if (parent.equals(folder) || Files.isDirectory(parent)) {
+            return;
+        }
+        Files.createDirectories(parent);
+        AtomicFiles.syncDirectory(parent.getParent());
+        AtomicFiles.syncDirectory(folder);
+    }
+
+    private static byte[] read(Path file) throws IOException {
+        try {
+            return Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private Set<UUID> list(Layout layout) throws IOException {
+        Set<UUID> players = new HashSet<>();
+        if (layout == Layout.FLAT) {
+            collect(folder, players);
+        } else {
+            for (Path outer : listShards(folder)) {
+                for (Path inner : listShards(outer)) {
+                    collect(inner, players);
+                }
+            }
+        }
+        return players;
+    }
+
+    private static void collect(Path directory, Set<UUID> players) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                try {
+                    players.add(UUID.fromString(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 目录中名字为两个字符的子目录，即分片目录
+     */
+    static Set<Path> listShards(Path directory) throws IOException {
+        Set<Path> shards = new HashSet<>();
+        if (!Files.isDirectory(directory)) {
+            return shards;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory,
+                path -> path.getFileName().toString().length() == 2 && Files.isDirectory(path))) {
+            stream.forEach(shards::add);
+        }
+        return shards;
+    }
+
+    private static void deleteIfEmpty(Path directory) {
+        try {
+            Files.deleteIfExists(directory);
+        } catch (IOException ignored) {
+            // 目录不为空（例如还有其他服务端刚写入的文件），保留即可
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import xyz.leafing.miniGameManager.utils.AtomicFiles;
+import xyz.leafing.miniGameManager.utils.ItemBlobs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按 SHA-256 内容哈希保存物品 NBT 的存储，位于 {@code items/<前两位>/<哈希>.nbt}。
+ * 引用计数只保存在内存中，启动时由所有快照的引用重建；计数归零的物品文件会被删除。
+ * <p>
+ * 物品文件写入时不单独 fsync，而是由 {@link #syncWrites()} 在提交引用它们的快照之前统一落盘。
+ * <p>
+ * 多个服务端共用存储时，本地计数不包含其他服务端的引用，因此永远不删除物品文件。
+ * 这是已知限制：共享目录中的物品文件只增不减，{@code /mgm stats} 中会注明。
+ */
+public class ItemBlobStore implements ItemBlobs {
+
+    private static final HexFormat HEX = HexFormat.of();
+
+    private final Path root;
+    private final boolean shared;
+    // 所有读写引用计数和增删文件的操作都在 this 上同步，避免删除正在被新快照引用的物品
+    private final Map<String, Integer> referenceCounts = new HashMap<>();
+
+    // 启动恢复登记完所有快照的引用之前，计数归零不代表物品没有被其他尚未登记的快照引用，
+    // 因此只移除计数，文件留给 sweepUnreferenced 统一判断
+    private boolean sweepPending = true;
+
+    // 已写入但尚未落盘的物品文件和新建的目录，只在自身上同步
+    private final Set<Path> unsynced = new LinkedHashSet<>();
+
+    private final AtomicLong dedupSavedBytes = new AtomicLong();
+    private final AtomicLong storedBytes = new AtomicLong();
+
+    public ItemBlobStore(File folder, boolean shared) {
+        this.root = folder.toPath();
+        this.shared = shared;
+    }
+
+    @Override
+    public byte[] store(byte[] itemNbt) throws IOException {
+        // 哈希和文件写入都在锁外进行，只有计数和存在性检查需要与 release 互斥
+        byte[] hash = hash(itemNbt);
+        String key = HEX.formatHex(hash);
+        Path file = pathOf(key);
+        synchronized (this) {
+            // 先登记引用，写入期间 release 不会让计数归零而删除这个物品
+            referenceCounts.merge(key, 1, Integer::sum);
+            if (Files.exists(file)) {
+                dedupSavedBytes.addAndGet(itemNbt.length);
+                return hash;
+            }
+        }
+        try {
+            writeBlob(file, itemNbt);
+        } catch (IOException e) {
+            // 另一个线程或共享存储的另一个服务端可能同时写入了相同内容的物品
+            if (!Files.exists(file)) {
+                release(List.of(hash));
+                throw e;
+            }
+        }
+        storedBytes.addAndGet(itemNbt.length);
+        return hash;
+    }
+
+    /**
+     * 写入同目录下的临时文件后重命名，读取方不会看到写了一半的物品。不做 fsync，见 {@link #syncWrites()}。
+     */
+    private void writeBlob(Path file, byte[] data) throws IOException {
+        Path directory = file.getParent();
+        if (!Files.isDirectory(directory)) {
+            Files.createDirectories(directory);
+            synchronized (unsynced) {
+                unsynced.add(directory);
+            }
+        }
+        // 同一物品可能被并发写入，临时文件名带随机后缀以免互相覆盖
+        Path temp = file.resolveSibling(file.getFileName() + "."
+                + Long.toHexString(ThreadLocalRandom.current().nextLong()) + AtomicFiles.TEMP_SUFFIX);
+        try {
+            Files.write(temp, data, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        synchronized (unsynced) {
+            unsynced.add(file);
+        }
+    }
+
+    /**
+     * 让此前写入的物品文件及其所在目录落盘，每个目录只同步一次。
+     * 必须在提交引用这些物品的快照之前调用，否则崩溃后快照可能引用不存在或不完整的物品。
+     */
+    public void syncWrites() throws IOException {
+        List<Path> pending;
+        synchronized (unsynced) {
+            if (unsynced.isEmpty()) {
+                return;
+            }
+            pending = new ArrayList<>(unsynced);
+            unsynced.clear();
+        }
+        Set<Path> directories = new LinkedHashSet<>();
+        try {
+            for (Path path : pending) {
+                directories.add(path.getParent());
+                if (Files.isDirectory(path)) {
+                    continue;
+                }
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.force(false);
+                } catch (NoSuchFileException ignored) {
+                    // 物品在落盘前已不再被引用并被删除
+                }
+            }
+        } catch (IOException e) {
+            // 留给下一次提交重试
+            synchronized (unsynced) {
+                unsynced.addAll(pending);
+            }
+            throw e;
+        }
+        directories.forEach(AtomicFiles::syncDirectory);
+    }
+
+    @Override
+    public byte[] load(byte[] hash) throws IOException {
+        return Files.readAllBytes(pathOf(HEX.formatHex(hash)));
+    }
+
+    public boolean exists(byte[] hash) {
+        return Files.exists(pathOf(HEX.formatHex(hash)));
+    }
+
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * 返回一个视图，通过它保存的每个物品引用都会记录到 acquired 中，
+     * 以便快照写入失败或被替换时释放。
+     */
+    public ItemBlobs recording(List<byte[]> acquired) {
+        return new ItemBlobs() {
+            @Override
+            public byte[] store(byte[] itemNbt) throws IOException {
+                byte[] hash = ItemBlobStore.this.store(itemNbt);
+                acquired.add(hash);
+                return hash;
+            }
+
+            @Override
+            public byte[] load(byte[] hash) throws IOException {
+                return ItemBlobStore.this.load(hash);
+            }
+        };
+    }
+
+    /**
+     * 释放一组引用，计数归零的物品文件会被删除。
+     */
+    public synchronized void release(List<byte[]> hashes) {
+        for (byte[] hash : hashes) {
+            String key = HEX.formatHex(hash);
+            Integer remaining = referenceCounts.computeIfPresent(key, (k, count) -> count > 1 ? count - 1 : null);
+            if (remaining == null && !sweepPending && !shared) {
+                deleteBlob(key);
+            }
+        }
+    }
+
+    /**
+     * 启动时根据快照中的引用恢复计数，不会写入任何文件。
+     */
+    public synchronized void retain(List<byte[]> hashes) {
+        for (byte[] hash : hashes) {
+            referenceCounts.merge(HEX.formatHex(hash), 1, Integer::sum);
+        }
+    }
+
+    /**
+     * 删除没有任何快照引用的物品文件，例如写入快照前崩溃留下的物品。
+     * 应在所有快照的引用都通过 {@link #retain(List)} 登记后调用。
+     *
+     * @return 删除的文件数量
+     */
+    public synchronized int sweepUnreferenced() throws IOException {
+        sweepPending = false;
+        if (shared || !Files.isDirectory(root)) {
+            return 0;
+        }
+        int removed = 0;
+        storedBytes.set(0);
+        try (DirectoryStream<Path> shards = Files.newDirectoryStream(root)) {
+            for (Path shard : shards) {
+                if (!Files.isDirectory(shard)) {
+                    continue;
+                }
+                try (DirectoryStream<Path> blobs = Files.newDirectoryStream(shard, "*.nbt")) {
+                    for (Path blob : blobs) {
+                        String name = blob.getFileName().toString();
+                        String key = name.substring(0, name.length() - ".nbt".length());
+                        if (referenceCounts.containsKey(key)) {
+                            storedBytes.addAndGet(Files.size(blob));
+                        } else if (Files.deleteIfExists(blob)) {
+                            removed++;
+                        }
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
+    private void deleteBlob(String key) {
+        Path file = pathOf(key);
+        try {
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                storedBytes.addAndGet(-size);
+            }
+        } catch (IOException ignored) {
+            // 文件已不存在，或下次启动时由 sweepUnreferenced 清理
+        }
+    }
+
+    private Path pathOf(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key + ".nbt");
+    }
+
+    private static byte[] hash(byte[] data) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(data);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("JVM 不支持 SHA-256", e);
+        }
+    }
+
+    /**
+     * 是否与其他服务端共用物品目录。共用时不会删除任何物品文件，计数也只包含本服务端的引用。
+     */
+    public boolean isShared() {
+        return shared;
+    }
+
+    public synchronized int getBlobCount() {
+        return referenceCounts.size();
+    }
+
+    public long getDedupSavedBytes() {
+        return dedupSavedBytes.get();
+    }
+
+    public long getStoredBytes() {
+        return storedBytes.get();
+    }
+}
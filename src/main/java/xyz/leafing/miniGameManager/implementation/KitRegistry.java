@@ -0,0 +1,94 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import xyz.leafing.miniGameManager.MiniGameManager;
+import xyz.leafing.miniGameManager.utils.AtomicFiles;
+import xyz.leafing.miniGameManager.utils.Kit;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * 装备包注册表。每个装备包保存为 kits/&lt;id&gt;.bin，插件启动时全部载入内存，
+ * 因此小游戏插件重启后无需重新构建物品即可直接使用上次注册的装备包。
+ */
+class KitRegistry {
+
+    private static final String SUFFIX = ".bin";
+
+    private final MiniGameManager plugin;
+    private final Path folder;
+    private final Map<String, Kit> kits = new ConcurrentHashMap<>();
+
+    KitRegistry(MiniGameManager plugin) {
+        this.plugin = plugin;
+        this.folder = plugin.getDataFolder().toPath().resolve("kits");
+        load();
+    }
+
+    private void load() {
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder, "*" + SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String id = name.substring(0, name.length() - SUFFIX.length());
+                try {
+                    kits.put(id, Kit.decode(id, Files.readAllBytes(file)));
+                } catch (IOException | RuntimeException e) {
+                    plugin.getLogger().log(Level.WARNING, "无法载入装备包 " + name + "，已跳过。", e);
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "无法读取装备包目录 " + folder, e);
+        }
+        if (!kits.isEmpty()) {
+            plugin.getLogger().info("已载入 " + kits.size() + " 个装备包。");
+        }
+    }
+
+    /**
+     * 注册装备包并同步写入磁盘，同名装备包会被替换。写盘失败时装备包仍可在本次运行中使用。
+     */
+    Kit register(Kit kit) {
+        kits.put(kit.getId(), kit);
+        try {
+            Files.createDirectories(folder);
+            AtomicFiles.write(fileOf(kit.getId()), kit.encode());
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "无法保存装备包 " + kit.getId() + "，重启后需要重新注册。", e);
+        }
+        return kit;
+    }
+
+    Optional<Kit> get(String id) {
+        return Optional.ofNullable(kits.get(id));
+    }
+
+    Set<String> getIds() {
+        return Set.copyOf(kits.keySet());
+    }
+
+    boolean remove(String id) {
+        if (kits.remove(id) == null) {
+            return false;
+        }
+        try {
+            Files.deleteIfExists(fileOf(id));
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "无法删除装备包文件 " + id + SUFFIX, e);
+        }
+        return true;
+    }
+
+    private Path fileOf(String id) {
+        return folder.resolve(id + SUFFIX);
+    }
+}
@@ -0,0 +1,95 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import xyz.leafing.miniGameManager.MiniGameManager;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * 在后台把文件存储中仍按旧布局存放的快照移到当前布局，服务端照常运行。
+ * 每个文件的移动都是一次同目录树内的原子重命名，并与该玩家的写入和删除互斥；
+ * 移动完成前 {@link FileSnapshotStore} 会在两种布局中查找，所以任何时刻都能读到快照。
+ */
+class LayoutMigration {
+
+    private final MiniGameManager plugin;
+    private final FileSnapshotStore files;
+    // 共享存储时在其文件锁内移动，与其他服务端的写入互斥
+    private final SharedSnapshotStore shared;
+    private final int parallelism;
+
+    LayoutMigration(MiniGameManager plugin, FileSnapshotStore files, SharedSnapshotStore shared, int parallelism) {
+        this.plugin = plugin;
+        this.files = files;
+        this.shared = shared;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @return 迁移结束时完成的 future，结果为移动的文件数
+     */
+    CompletableFuture<Integer> start() {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        Thread.ofVirtual().name("MiniGameManager-Layout-Migration").start(() -> {
+            try {
+                result.complete(run());
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.SEVERE, "快照目录布局迁移失败！未迁移的快照仍可正常读取，下次启动时会继续迁移。", t);
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    private int run() throws Exception {
+        Set<UUID> misplaced = files.listMisplaced();
+        if (misplaced.isEmpty()) {
+            files.finishMigration();
+            return 0;
+        }
+        String layout = files.getLayout().name().toLowerCase(Locale.ROOT);
+        plugin.getLogger().info("正在后台把 " + misplaced.size() + " 个快照迁移到 " + layout + " 布局...");
+        long start = System.nanoTime();
+
+        AtomicInteger moved = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Semaphore permits = new Semaphore(parallelism);
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (UUID uuid : misplaced) {
+                workers.execute(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        boolean relocated = shared != null
+                                ? shared.modify(() -> files.relocate(uuid))
+                                : files.relocate(uuid);
+                        if (relocated) {
+                            moved.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        failed.incrementAndGet();
+                        plugin.getLogger().log(Level.WARNING, "迁移玩家 " + uuid + " 的快照失败，将继续从旧位置读取。", e);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (failed.get() == 0 && files.listMisplaced().isEmpty()) {
+            files.finishMigration();
+            plugin.getLogger().info("快照目录布局迁移完成: 移动 " + moved.get() + " 个文件，耗时 " + millis + " ms。");
+        } else {
+            plugin.getLogger().warning("快照目录布局迁移未全部完成: 移动 " + moved.get() + " 个文件，失败 " + failed.get()
+                    + " 个，耗时 " + millis + " ms。剩余的快照仍可读取，下次启动时会继续迁移。");
+        }
+        return moved.get();
+    }
+}
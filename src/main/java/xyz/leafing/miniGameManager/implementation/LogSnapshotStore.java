@@ -0,0 +1,458 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import xyz.leafing.miniGameManager.utils.AtomicFiles;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * 日志结构的快照存储。快照作为记录追加到内存映射的段文件 {@code segment-<编号>.log} 中，
+ * 保存和删除都不会创建或删除文件，一批写入只需要一次 msync。
+ * 每个玩家最新记录的位置保存在内存索引中，第一次访问时按编号顺序扫描所有段重建，
+ * 因此重建发生在启动恢复的后台线程上，不会阻塞 onEnable。
+ * <p>
+ * 记录格式: CRC32C (int，覆盖其后所有字节)、类型 (byte)、UUID (两个 long)、长度 (int)、快照内容。
+ * 删除写入一条没有内容的墓碑记录。段写满后封存，有效记录占比低于阈值的封存段由后台压缩：
+ * 把仍然有效的记录复制到当前段末尾并落盘后，再删除旧段文件。
+ * <p>
+ * 索引只存在于本进程，不能与其他服务端共用。
+ */
+public class LogSnapshotStore implements SnapshotStore {
+
+    public static final String NAME = "log";
+    // 段通过 MappedByteBuffer 以 int 偏移访问，上限远小于 2 GiB
+    public static final long MIN_SEGMENT_BYTES = 1L << 20;
+    public static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_TOMBSTONE = 2;
+    private static final int HEADER_BYTES = 4 + 1 + 8 + 8 + 4;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int flushedPosition;
+        // 该段中仍被索引引用的记录字节数
+        private long liveBytes;
+
+        private Segment(long id, Path path, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private record Location(Segment segment, int offset, int length) {
+        private int recordBytes() {
+            return HEADER_BYTES + length;
+        }
+    }
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final double compactThreshold;
+    private final int maxBatchSize;
+    private final Logger logger;
+
+    private final Map<UUID, Location> index = new ConcurrentHashMap<>();
+    // 以下字段只在 this 锁内访问。segments 按编号排序，active 是其中最后一个
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private volatile boolean loaded;
+    private volatile boolean closed;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    /**
+     * @param segmentBytes     每个段文件的大小，限制在 {@link #MIN_SEGMENT_BYTES} 到 {@link #MAX_SEGMENT_BYTES} 之间；
+     *                         超过该大小的单个快照会独占一个更大的段
+     * @param compactThreshold 封存段中有效记录的占比低于该值时压缩
+     */
+    public LogSnapshotStore(File directory, long segmentBytes, double compactThreshold, int maxBatchSize, Logger logger) throws IOException {
+        this.directory = directory.toPath();
+        this.segmentBytes = (int) Math.clamp(segmentBytes, MIN_SEGMENT_BYTES, MAX_SEGMENT_BYTES);
+        this.compactThreshold = compactThreshold;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.logger = logger;
+        Files.createDirectories(this.directory);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void save(UUID uuid, byte[] data) throws IOException {
+        saveAll(Map.of(uuid, data));
+    }
+
+    /**
+     * 一批记录总是写入同一个段并一起落盘。落盘失败时抹掉这批记录的第一个头部，
+     * 重建索引时扫描会停在那里，这批写入就像从未发生。
+     */
+    @Override
+    public void saveAll(Map<UUID, byte[]> snapshots) throws IOException {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        ensureLoaded();
+        synchronized (this) {
+            ensureOpen();
+            int batchBytes = 0;
+            for (byte[] data : snapshots.values()) {
+                batchBytes += HEADER_BYTES + data.length;
+            }
+            reserve(batchBytes);
+            int batchStart = active.writePosition;
+            List<Map.Entry<UUID, Location>> written = new ArrayList<>(snapshots.size());
+            for (Map.Entry<UUID, byte[]> entry : snapshots.entrySet()) {
+                written.add(Map.entry(entry.getKey(), append(TYPE_PUT, entry.getKey(), entry.getValue())));
+            }
+            try {
+                flush(active);
+            } catch (RuntimeException e) {
+                active.buffer.put(batchStart + 4, (byte) 0);
+                active.writePosition = batchStart;
+                active.flushedPosition = Math.min(active.flushedPosition, batchStart);
+                throw new IOException("写入快照日志失败", e);
+            }
+            for (Map.Entry<UUID, Location> entry : written) {
+                track(entry.getKey(), entry.getValue());
+            }
+        }
+        scheduleCompaction();
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public byte[] load(UUID uuid) throws IOException {
+        ensureLoaded();
+        Location location = index.get(uuid);
+        if (location == null) {
+            return null;
+        }
+        // 只使用绝对位置读取，多个线程可以同时读同一个映射
+        ByteBuffer buffer = location.segment().buffer;
+        int offset = location.offset();
+        if (buffer.getInt(offset) != checksum(buffer, offset + 4, location.recordBytes() - 4)) {
+            throw new IOException("玩家 " + uuid + " 的快照记录校验失败: " + location.segment().path + " @" + offset);
+        }
+        byte[] data = new byte[location.length()];
+        buffer.get(offset + HEADER_BYTES, data);
+        return data;
+    }
+
+    @Override
+    public boolean exists(UUID uuid) throws IOException {
+        ensureLoaded();
+        return index.containsKey(uuid);
+    }
+
+    @Override
+    public boolean delete(UUID uuid) throws IOException {
+        ensureLoaded();
+        synchronized (this) {
+            ensureOpen();
+            if (!index.containsKey(uuid)) {
+                return false;
+            }
+            reserve(HEADER_BYTES);
+            append(TYPE_TOMBSTONE, uuid, null);
+            flush(active);
+            Location previous = index.remove(uuid);
+            previous.segment().liveBytes -= previous.recordBytes();
+        }
+        scheduleCompaction();
+        return true;
+    }
+
+    @Override
+    public Set<UUID> list() throws IOException {
+        ensureLoaded();
+        return new HashSet<>(index.keySet());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (active != null) {
+                flush(active);
+            }
+        } finally {
+            for (Segment segment : segments.values()) {
+                segment.channel.close();
+            }
+        }
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (loaded) {
+            return;
+        }
+        synchronized (this) {
+            if (!loaded) {
+                ensureOpen();
+                rebuild();
+                loaded = true;
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("快照日志已关闭");
+        }
+    }
+
+    private void rebuild() throws IOException {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "segment-*.log")) {
+            for (Path file : stream) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    files.put(Long.parseLong(matcher.group(1)), file);
+                }
+            }
+        }
+        for (Map.Entry<Long, Path> file : files.entrySet()) {
+            Segment segment = openSegment(file.getKey(), 0);
+            segment.writePosition = scan(segment);
+            int end = segment.writePosition;
+            if (end + HEADER_BYTES <= segment.buffer.capacity() && segment.buffer.get(end + 4) != 0) {
+                logger.warning("快照日志段 " + segment.path + " 在位置 " + end + " 处有损坏或未写完的记录，该段之后的内容已被忽略。");
+            }
+            segment.flushedPosition = segment.writePosition;
+            segments.put(segment.id, segment);
+        }
+        active = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        if (active == null) {
+            roll(0);
+        }
+    }
+
+    /**
+     * 扫描一个段中的记录并更新索引，遇到第一个无效记录（段的空白尾部，或崩溃时未写完的批次）时停止。
+     *
+     * @return 有效记录之后的位置
+     */
+    private int scan(Segment segment) {
+        ByteBuffer buffer = segment.buffer;
+        int position = 0;
+        while (position + HEADER_BYTES <= buffer.capacity()) {
+            byte type = buffer.get(position + 4);
+            int length = buffer.getInt(position + 21);
+            if ((type != TYPE_PUT && type != TYPE_TOMBSTONE) || length < 0 || length > buffer.capacity() - position - HEADER_BYTES
+                    || buffer.getInt(position) != checksum(buffer, position + 4, HEADER_BYTES - 4 + length)) {
+                break;
+            }
+            UUID uuid = new UUID(buffer.getLong(position + 5), buffer.getLong(position + 13));
+            if (type == TYPE_PUT) {
+                track(uuid, new Location(segment, position, length));
+            } else {
+                Location previous = index.remove(uuid);
+                if (previous != null) {
+                    previous.segment().liveBytes -= previous.recordBytes();
+                }
+            }
+            position += HEADER_BYTES + length;
+        }
+        return position;
+    }
+
+    private void track(UUID uuid, Location location) {
+        Location previous = index.put(uuid, location);
+        if (previous != null) {
+            previous.segment().liveBytes -= previous.recordBytes();
+        }
+        location.segment().liveBytes += location.recordBytes();
+    }
+
+    /**
+     * 保证当前段剩余空间足够写入 bytes 字节，不够时封存当前段并开启新段。
+     */
+    private void reserve(int bytes) throws IOException {
+        if (active.writePosition + bytes > active.buffer.capacity()) {
+            roll(bytes);
+        }
+    }
+
+    private void roll(int minBytes) throws IOException {
+        long id = 1;
+        if (active != null) {
+            flush(active);
+            id = active.id + 1;
+        }
+        Segment segment = openSegment(id, Math.max(segmentBytes, minBytes));
+        // 新段的目录项也必须落盘，否则崩溃后整个段可能丢失
+        AtomicFiles.syncDirectory(directory);
+        segments.put(id, segment);
+        active = segment;
+    }
+
+    private Segment openSegment(long id, int capacity) throws IOException {
+        Path path = directory.resolve(String.format("segment-%010d.log", id));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long size = Math.max(channel.size(), capacity);
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("段文件过大: " + path);
+            }
+            return new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 在当前段末尾写入一条记录，调用前必须已经通过 {@link #reserve(int)} 保证空间。
+     */
+    private Location append(byte type, UUID uuid, byte[] data) {
+        int length = data == null ? 0 : data.length;
+        MappedByteBuffer buffer = active.buffer;
+        int offset = active.writePosition;
+        buffer.put(offset + 4, type);
+        buffer.putLong(offset + 5, uuid.getMostSignificantBits());
+        buffer.putLong(offset + 13, uuid.getLeastSignificantBits());
+        buffer.putInt(offset + 21, length);
+        if (data != null) {
+            buffer.put(offset + HEADER_BYTES, data);
+        }
+        buffer.putInt(offset, checksum(buffer, offset + 4, HEADER_BYTES - 4 + length));
+        active.writePosition += HEADER_BYTES + length;
+        return new Location(active, offset, length);
+    }
+
+    private static void flush(Segment segment) {
+        if (segment.writePosition > segment.flushedPosition) {
+            segment.buffer.force(segment.flushedPosition, segment.writePosition - segment.flushedPosition);
+            segment.flushedPosition = segment.writePosition;
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer, int offset, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(offset, length));
+        return (int) crc.getValue();
+    }
+
+    private void scheduleCompaction() {
+        if (closed || selectCompactionCandidate() == null || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        Thread.ofVirtual().name("MiniGameManager-Log-Compactor").start(() -> {
+            try {
+                Segment victim;
+                while ((victim = selectCompactionCandidate()) != null) {
+                    compact(victim);
+                }
+            } catch (IOException | RuntimeException e) {
+                logger.log(Level.WARNING, "压缩快照日志失败，将在下次写入后重试。", e);
+            } finally {
+                compacting.set(false);
+            }
+        });
+    }
+
+    private synchronized Segment selectCompactionCandidate() {
+        if (closed) {
+            return null;
+        }
+        for (Segment segment : segments.values()) {
+            if (segment != active && (segment.writePosition == 0 || segment.liveBytes < segment.writePosition * compactThreshold)) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 把段中仍然有效的记录复制到当前段。如果还有更早的段，墓碑也要保留，
+     * 否则重建时更早段中的旧快照会重新出现。
+     */
+    private synchronized void compact(Segment victim) throws IOException {
+        if (closed || !segments.containsKey(victim.id)) {
+            return;
+        }
+        boolean hasOlder = segments.firstKey() < victim.id;
+        ByteBuffer buffer = victim.buffer;
+        Map<UUID, byte[]> live = new LinkedHashMap<>();
+        Set<UUID> tombstones = new HashSet<>();
+        int copyBytes = 0;
+        int position = 0;
+        while (position < victim.writePosition) {
+            byte type = buffer.get(position + 4);
+            UUID uuid = new UUID(buffer.getLong(position + 5), buffer.getLong(position + 13));
+            int length = buffer.getInt(position + 21);
+            Location current = index.get(uuid);
+            if (type == TYPE_PUT && current != null && current.segment() == victim && current.offset() == position) {
+                byte[] data = new byte[length];
+                buffer.get(position + HEADER_BYTES, data);
+                live.put(uuid, data);
+                copyBytes += HEADER_BYTES + length;
+            } else if (type == TYPE_TOMBSTONE && current == null && hasOlder && tombstones.add(uuid)) {
+                copyBytes += HEADER_BYTES;
+            }
+            position += HEADER_BYTES + length;
+        }
+
+        if (copyBytes > 0) {
+            reserve(copyBytes);
+            List<Map.Entry<UUID, Location>> copied = new ArrayList<>(live.size());
+            for (Map.Entry<UUID, byte[]> entry : live.entrySet()) {
+                copied.add(Map.entry(entry.getKey(), append(TYPE_PUT, entry.getKey(), entry.getValue())));
+            }
+            for (UUID uuid : tombstones) {
+                append(TYPE_TOMBSTONE, uuid, null);
+            }
+            flush(active);
+            for (Map.Entry<UUID, Location> entry : copied) {
+                track(entry.getKey(), entry.getValue());
+            }
+        }
+
+        segments.remove(victim.id);
+        victim.channel.close();
+        try {
+            Files.deleteIfExists(victim.path);
+        } catch (IOException e) {
+            // 部分平台不允许删除仍被映射的文件；段中已没有有效记录，下次启动时会被再次压缩
+            logger.log(Level.WARNING, "无法删除已压缩的快照日志段 " + victim.path, e);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import xyz.leafing.miniGameManager.MiniGameManager;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+
+/**
+ * 所有需要回到主线程的 API 操作共用的工作队列。
+ * 每个 tick 执行一次，只在配置的毫秒预算内处理任务，剩余任务顺延到下一个 tick。
+ */
+public class MainThreadExecutor implements Executor {
+
+    private final MiniGameManager plugin;
+    private final long budgetNanos;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private BukkitTask task;
+    private volatile boolean shutdown;
+
+    private volatile long lastTickUsedNanos;
+    private volatile int lastTickProcessed;
+    private volatile long maxTickUsedNanos;
+
+    public MainThreadExecutor(MiniGameManager plugin, long budgetNanos) {
+        this.plugin = plugin;
+        this.budgetNanos = budgetNanos;
+    }
+
+    public void start() {
+        task = Bukkit.getScheduler().runTaskTimer(plugin, this::drain, 1L, 1L);
+    }
+
+    /**
+     * 关闭后不再入队：在主线程上提交的任务直接执行，其他线程提交的任务被拒绝。
+     *
+     * @throws RejectedExecutionException 已关闭且不在主线程上时
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (!shutdown) {
+            queue.add(command);
+            queueDepth.incrementAndGet();
+            // 入队的同时队列被关闭并排空时，任务可能已错过排空，收回后按关闭后的规则处理
+            if (!shutdown || !queue.remove(command)) {
+                return;
+            }
+            queueDepth.decrementAndGet();
+        }
+        if (!Bukkit.isPrimaryThread()) {
+            throw new RejectedExecutionException("主线程队列已关闭");
+        }
+        runSafely(command);
+    }
+
+    /**
+     * @throws RejectedExecutionException 已关闭且不在主线程上时
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, this);
+    }
+
+    private void drain() {
+        long start = System.nanoTime();
+        int processed = 0;
+        // 每个 tick 至少执行一个任务，保证队列总能向前推进
+        do {
+            Runnable command = queue.poll();
+            if (command == null) {
+                break;
+            }
+            queueDepth.decrementAndGet();
+            runSafely(command);
+            processed++;
+        } while (System.nanoTime() - start < budgetNanos);
+
+        long used = System.nanoTime() - start;
+        lastTickUsedNanos = used;
+        lastTickProcessed = processed;
+        if (used > maxTickUsedNanos) {
+            maxTickUsedNanos = used;
+        }
+    }
+
+    private void runSafely(Runnable command) {
+        try {
+            command.run();
+        } catch (Throwable t) {
+            plugin.getLogger().log(Level.SEVERE, "主线程任务执行失败！", t);
+        }
+    }
+
+    /**
+     * 停止定时任务，并在当前线程上执行完所有剩余任务，包括这些任务新提交的任务。应在插件卸载时于主线程调用，
+     * 且应在离线执行器排空之后调用，否则离线操作之后提交的后续任务将无人执行。
+     */
+    public void shutdown() {
+        shutdown = true;
+        if (task != null) {
+            task.cancel();
+        }
+        Runnable command;
+        while ((command = queue.poll()) != null) {
+            queueDepth.decrementAndGet();
+            runSafely(command);
+        }
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public long getBudgetNanos() {
+        return budgetNanos;
+    }
+
+    public long getLastTickUsedNanos() {
+        return lastTickUsedNanos;
+    }
+
+    public int getLastTickProcessed() {
+        return lastTickProcessed;
+    }
+
+    public long getMaxTickUsedNanos() {
+        return maxTickUsedNanos;
+    }
+
+    public void resetMaxTickUsed() {
+        maxTickUsedNanos = 0;
+    }
+
+    /**
+     * 上一个 tick 使用的预算比例，可能因单个任务耗时过长而超过 1。
+     */
+    public double getLastTickBudgetUsage() {
+        return (double) lastTickUsedNanos / budgetNanos;
+    }
+}
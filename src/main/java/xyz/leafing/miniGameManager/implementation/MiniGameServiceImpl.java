@@ -7,41 +7,146 @@ import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 import xyz.leafing.miniGameManager.MiniGameManager;
 import xyz.leafing.miniGameManager.api.MiniGameAPI;
+import xyz.leafing.miniGameManager.api.OfflineEdit;
+import xyz.leafing.miniGameManager.api.SnapshotSection;
+import xyz.leafing.miniGameManager.jfr.SnapshotRestoreEvent;
+import xyz.leafing.miniGameManager.utils.Kit;
+import xyz.leafing.miniGameManager.utils.LazySnapshot;
 import xyz.leafing.miniGameManager.utils.OfflinePlayerManager;
+import xyz.leafing.miniGameManager.utils.OperationMetrics.Operation;
 import xyz.leafing.miniGameManager.utils.PlayerDataSnapshot;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 
 public class MiniGameServiceImpl implements MiniGameAPI {
 
     private final MiniGameManager plugin;
     private final PlayerDataManager dataManager;
     private final OfflinePlayerManager offlineManager;
+    private final MainThreadExecutor mainThread;
+    private final OfflineIoExecutor offlineExecutor;
+    private final KitRegistry kits;
     private final Map<UUID, JavaPlugin> playersInGame = new ConcurrentHashMap<>();
+    // playersInGame 的反向索引，按插件查找玩家时无需遍历所有玩家
+    private final Map<JavaPlugin, Set<UUID>> playersByPlugin = new ConcurrentHashMap<>();
+    // 批量进入游戏需要“全部成功或全部失败”，且两个索引必须保持一致，因此所有登记/释放都在此锁下进行
+    private final Object sessionLock = new Object();
 
     public MiniGameServiceImpl(MiniGameManager plugin, OfflinePlayerManager offlineManager) {
         this.plugin = plugin;
         this.dataManager = new PlayerDataManager(plugin);
         this.offlineManager = offlineManager;
+        long budgetNanos = TimeUnit.MICROSECONDS.toNanos((long) (plugin.getConfig().getDouble("main-thread.tick-budget-ms", 5.0) * 1000));
+        this.mainThread = new MainThreadExecutor(plugin, budgetNanos);
+        this.mainThread.start();
+        this.offlineExecutor = new OfflineIoExecutor(
+                plugin.getConfig().getInt("offline-io.max-concurrency", 4),
+                plugin.getConfig().getInt("offline-io.max-queued", 256));
+        this.kits = new KitRegistry(plugin);
+
+        File worldPlayerData = offlineManager.getPlayerDataFolder();
+        new StartupRecovery(plugin, dataManager, worldPlayerData == null ? null : worldPlayerData.toPath(), plugin.getRecoveryGate()).start()
+                // 布局迁移与恢复扫描都大量访问快照目录，等恢复结束后再开始
+                .whenComplete((report, error) -> dataManager.migrateFileLayout());
     }
 
     @Override
     public boolean enterGame(Player player, JavaPlugin sourcePlugin) {
-        return playersInGame.putIfAbsent(player.getUniqueId(), sourcePlugin) == null;
+        synchronized (sessionLock) {
+            if (playersInGame.putIfAbsent(player.getUniqueId(), sourcePlugin) != null) {
+                return false;
+            }
+            indexSession(player.getUniqueId(), sourcePlugin);
+            return true;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> enterGameBatch(Collection<Player> players, JavaPlugin sourcePlugin) {
+        List<Player> lobby = List.copyOf(players);
+        synchronized (sessionLock) {
+            for (Player player : lobby) {
+                if (playersInGame.containsKey(player.getUniqueId())) {
+                    return CompletableFuture.completedFuture(false);
+                }
+            }
+            for (Player player : lobby) {
+                playersInGame.put(player.getUniqueId(), sourcePlugin);
+                indexSession(player.getUniqueId(), sourcePlugin);
+            }
+        }
+
+        // 每名玩家的捕获都是主线程队列中的一个任务，由队列的 tick 预算自动分摊
+        List<CompletableFuture<Boolean>> writes = new ArrayList<>(lobby.size());
+        for (Player player : lobby) {
+            writes.add(mainThread.supply(() -> {
+                if (!player.isOnline()) {
+                    plugin.getLogger().warning("玩家 " + player.getName() + " 在批量保存前已离线，跳过其数据快照。");
+                    return CompletableFuture.completedFuture(false);
+                }
+                return dataManager.saveDataAsync(player);
+            }).thenCompose(write -> write));
+        }
+        return CompletableFuture.allOf(writes.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> writes.stream().allMatch(CompletableFuture::join));
     }
 
     @Override
     public boolean leaveGame(UUID playerUUID, JavaPlugin sourcePlugin) {
         // 直接使用 UUID 进行判断和移除
-        if (sourcePlugin.equals(playersInGame.get(playerUUID))) {
-            playersInGame.remove(playerUUID);
+        synchronized (sessionLock) {
+            if (!playersInGame.remove(playerUUID, sourcePlugin)) {
+                return false;
+            }
+            Set<UUID> players = playersByPlugin.get(sourcePlugin);
+            if (players != null) {
+                players.remove(playerUUID);
+                if (players.isEmpty()) {
+                    playersByPlugin.remove(sourcePlugin);
+                }
+            }
             return true;
         }
-        return false;
+    }
+
+    @Override
+    public Set<UUID> getPlayers(JavaPlugin sourcePlugin) {
+        synchronized (sessionLock) {
+            Set<UUID> players = playersByPlugin.get(sourcePlugin);
+            return players == null ? Set.of() : Set.copyOf(players);
+        }
+    }
+
+    @Override
+    public Set<UUID> leaveAll(JavaPlugin sourcePlugin) {
+        synchronized (sessionLock) {
+            Set<UUID> players = playersByPlugin.remove(sourcePlugin);
+            if (players == null) {
+                return Set.of();
+            }
+            for (UUID uuid : players) {
+                playersInGame.remove(uuid, sourcePlugin);
+            }
+            return Set.copyOf(players);
+        }
+    }
+
+    private void indexSession(UUID playerUUID, JavaPlugin sourcePlugin) {
+        playersByPlugin.computeIfAbsent(sourcePlugin, key -> ConcurrentHashMap.newKeySet()).add(playerUUID);
     }
 
     @Override
@@ -51,12 +156,21 @@ public class MiniGameServiceImpl implements MiniGameAPI {
 
     @Override
     public Optional<JavaPlugin> getOwningPlugin(Player player) {
-        return Optional.ofNullable(playersInGame.get(player.getUniqueId()));
+        return getOwningPlugin(player.getUniqueId());
+    }
+
+    public Optional<JavaPlugin> getOwningPlugin(UUID playerUUID) {
+        return Optional.ofNullable(playersInGame.get(playerUUID));
     }
 
     @Override
     public boolean savePlayerData(Player player) {
-        return dataManager.saveData(player);
+        return savePlayerDataAsync(player).join();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> savePlayerDataAsync(Player player) {
+        return dataManager.saveDataAsync(player);
     }
 
     @Override
@@ -71,36 +185,106 @@ public class MiniGameServiceImpl implements MiniGameAPI {
 
     @Override
     public CompletableFuture<Boolean> restorePlayerData(UUID playerUUID) {
+        return restorePlayerData(playerUUID, EnumSet.allOf(SnapshotSection.class));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> restorePlayerData(UUID playerUUID, Set<SnapshotSection> sections) {
+        if (sections.isEmpty()) {
+            throw new IllegalArgumentException("至少需要恢复一个区段");
+        }
         if (!hasPendingData(playerUUID)) {
             return CompletableFuture.completedFuture(false);
         }
+        long start = System.nanoTime();
+        SnapshotRestoreEvent event = new SnapshotRestoreEvent();
+        event.begin();
+        Player onlinePlayer = Bukkit.getPlayer(playerUUID);
+        boolean online = onlinePlayer != null && onlinePlayer.isOnline();
+        String owner = plugin.getOwningPluginName(playerUUID);
+        return restore(playerUUID, EnumSet.copyOf(sections)).whenComplete((success, error) -> {
+            boolean restored = error == null && success;
+            plugin.getMetrics().record(Operation.RESTORE, start, restored);
+            event.end();
+            if (event.shouldCommit()) {
+                event.setPlayer(playerUUID, owner);
+                event.online = online;
+                event.success = restored;
+                event.commit();
+            }
+        });
+    }
 
+    private CompletableFuture<Boolean> restore(UUID playerUUID, Set<SnapshotSection> sections) {
         Player onlinePlayer = Bukkit.getPlayer(playerUUID);
         if (onlinePlayer != null && onlinePlayer.isOnline()) {
-            return CompletableFuture.supplyAsync(() -> dataManager.restoreData(onlinePlayer), runnable -> Bukkit.getScheduler().runTask(plugin, runnable));
+            // 读取和解码在后台进行，主线程只负责把现成的物品和状态应用到玩家身上
+            return loadSnapshotAsync(playerUUID, sections).thenCompose(snapshotOpt -> {
+                if (snapshotOpt.isEmpty()) {
+                    plugin.getLogger().warning("找不到玩家 " + onlinePlayer.getName() + " 的数据快照，无法恢复。");
+                    return CompletableFuture.completedFuture(false);
+                }
+                LazySnapshot snapshot = snapshotOpt.get();
+                Set<SnapshotSection> available = restorableSections(playerUUID, snapshot, sections);
+                if (available.isEmpty()) {
+                    return CompletableFuture.completedFuture(false);
+                }
+                return mainThread.supply(() -> onlinePlayer.isOnline()
+                        && dataManager.applySnapshot(onlinePlayer, snapshot, available)
+                ).thenCompose(applied -> applied
+                        ? removeRestoredSections(playerUUID, snapshot, available)
+                        : CompletableFuture.completedFuture(false));
+            });
         } else {
-            return CompletableFuture.supplyAsync(() -> {
-                Optional<PlayerDataSnapshot> snapshotOpt = dataManager.loadSnapshot(playerUUID);
-                if (snapshotOpt.isPresent()) {
-                    boolean success = offlineManager.restorePlayerDataNBT(playerUUID, snapshotOpt.get());
-                    if (success) {
-                        dataManager.deleteDataFile(playerUUID);
-                    }
-                    return success;
+            return runOffline(playerUUID, () -> {
+                Optional<LazySnapshot> snapshotOpt = dataManager.loadSnapshot(playerUUID, sections);
+                if (snapshotOpt.isEmpty()) {
+                    return false;
                 }
-                return false;
+                LazySnapshot snapshot = snapshotOpt.get();
+                Set<SnapshotSection> available = restorableSections(playerUUID, snapshot, sections);
+                // 只有 .dat 已修改且已恢复的区段已从快照中移除才算恢复成功
+                return !available.isEmpty()
+                        && offlineManager.restorePlayerDataNBT(playerUUID, snapshot, available)
+                        && dataManager.removeRestoredSections(playerUUID, snapshot, available);
             });
         }
     }
 
+    /**
+     * @return 选定区段中仍在快照里的部分；之前单独恢复过的区段已不在快照中
+     */
+    Set<SnapshotSection> restorableSections(UUID playerUUID, LazySnapshot snapshot, Set<SnapshotSection> sections) {
+        Set<SnapshotSection> available = snapshot.getSections();
+        available.retainAll(sections);
+        if (available.isEmpty()) {
+            plugin.getLogger().warning("玩家 " + playerUUID + " 的快照中已没有区段 " + sections + "，它们已经恢复过。");
+        }
+        return available;
+    }
+
+    /**
+     * 快照已经应用到在线玩家身上，移除已恢复的区段不能因离线队列已满被拒绝，否则下次恢复时会再次应用。
+     * 执行器已关闭（插件正在卸载）时直接在当前线程执行。
+     */
+    CompletableFuture<Boolean> removeRestoredSections(UUID playerUUID, LazySnapshot snapshot, Set<SnapshotSection> restored) {
+        try {
+            return offlineExecutor.supplyRequired(() -> dataManager.removeRestoredSections(playerUUID, snapshot, restored));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(dataManager.removeRestoredSections(playerUUID, snapshot, restored));
+        }
+    }
+
     @Override
     public CompletableFuture<Boolean> setGameMode(UUID playerUUID, GameMode gameMode) {
         Player onlinePlayer = Bukkit.getPlayer(playerUUID);
         if (onlinePlayer != null && onlinePlayer.isOnline()) {
-            Bukkit.getScheduler().runTask(plugin, () -> onlinePlayer.setGameMode(gameMode));
-            return CompletableFuture.completedFuture(true);
+            return mainThread.supply(() -> {
+                onlinePlayer.setGameMode(gameMode);
+                return true;
+            });
         } else {
-            return CompletableFuture.supplyAsync(() -> offlineManager.setGameModeNBT(playerUUID, gameMode));
+            return runOffline(playerUUID, () -> offlineManager.setGameModeNBT(playerUUID, gameMode));
         }
     }
 
@@ -108,20 +292,164 @@ public class MiniGameServiceImpl implements MiniGameAPI {
     public CompletableFuture<Boolean> teleport(UUID playerUUID, Location location) {
         Player onlinePlayer = Bukkit.getPlayer(playerUUID);
         if (onlinePlayer != null && onlinePlayer.isOnline()) {
-            return CompletableFuture.supplyAsync(() -> onlinePlayer.teleport(location), runnable -> Bukkit.getScheduler().runTask(plugin, runnable));
+            // 与批量传送相同，先异步加载目标区块
+            return teleportBatch(List.of(playerUUID), List.of(location));
         } else {
-            return CompletableFuture.supplyAsync(() -> offlineManager.teleportNBT(playerUUID, location));
+            return runOffline(playerUUID, () -> offlineManager.teleportNBT(playerUUID, location));
         }
     }
 
+    @Override
+    public CompletableFuture<Boolean> teleportBatch(Collection<UUID> playerUUIDs, List<Location> spawnPoints) {
+        return new BatchTeleport(plugin, mainThread, this::editOffline, playerUUIDs, spawnPoints).start();
+    }
+
     @Override
     public CompletableFuture<Boolean> clearFullPlayerData(UUID playerUUID) {
         Player onlinePlayer = Bukkit.getPlayer(playerUUID);
         if (onlinePlayer != null && onlinePlayer.isOnline()) {
-            Bukkit.getScheduler().runTask(plugin, () -> dataManager.clearFullData(onlinePlayer));
-            return CompletableFuture.completedFuture(true);
+            return mainThread.supply(() -> {
+                dataManager.clearFullData(onlinePlayer);
+                return true;
+            });
         } else {
-            return CompletableFuture.supplyAsync(() -> offlineManager.clearFullDataNBT(playerUUID));
+            return runOffline(playerUUID, () -> offlineManager.clearFullDataNBT(playerUUID));
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 批量恢复多名玩家的数据，没有待恢复数据的玩家会被跳过。
+     * 同时进行的恢复数不超过离线执行器的并发上限；在线玩家的应用由主线程队列按 tick 预算分摊，
+     * 因此不会一次性占满主线程或磁盘。
+     * 轮到时仍在游戏中的玩家会被跳过：他们的快照属于正在进行的游戏，应由所属插件在游戏结束时恢复。
+     */
+    public BulkRestore restoreAll(Collection<UUID> playerUUIDs) {
+        List<UUID> pending = playerUUIDs.stream().filter(this::hasPendingData).toList();
+        return new BulkRestore(pending, playersInGame::containsKey, this::restorePlayerData)
+                .start(offlineExecutor.getMaxConcurrency());
+    }
+
+    /**
+     * @return 磁盘上有待恢复快照（或正在写入快照）的所有玩家
+     */
+    public Set<UUID> getPendingPlayers() {
+        return dataManager.getPendingPlayers();
+    }
+
+    /**
+     * 在当前线程上预先读取并解码玩家的快照，供其加入游戏后的恢复直接使用。
+     */
+    public void prefetchSnapshot(UUID playerUUID) {
+        dataManager.prefetchSnapshot(playerUUID);
+    }
+
+    /**
+     * 玩家退出时调用，释放只为在线玩家保留的状态。
+     */
+    public void handleQuit(UUID playerUUID) {
+        dataManager.forgetValidation(playerUUID);
+    }
+
+    @Override
+    public CompletableFuture<Optional<LazySnapshot>> readSnapshot(UUID playerUUID) {
+        return loadSnapshotAsync(playerUUID, EnumSet.noneOf(SnapshotSection.class));
+    }
+
+    CompletableFuture<Optional<LazySnapshot>> loadSnapshotAsync(UUID playerUUID, Set<SnapshotSection> sections) {
+        try {
+            return offlineExecutor.supply(() -> dataManager.loadSnapshot(playerUUID, sections));
+        } catch (RejectedExecutionException e) {
+            plugin.getLogger().warning("读取玩家 " + playerUUID + " 的快照被拒绝: " + e.getMessage());
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+    }
+
+    @Override
+    public Kit registerKit(String kitId, PlayerDataSnapshot contents) {
+        return kits.register(Kit.of(kitId, contents));
+    }
+
+    @Override
+    public Kit registerKit(String kitId, Player template) {
+        return registerKit(kitId, dataManager.captureSnapshot(template));
+    }
+
+    @Override
+    public Optional<Kit> getKit(String kitId) {
+        return kits.get(kitId);
+    }
+
+    @Override
+    public Set<String> getKitIds() {
+        return kits.getIds();
+    }
+
+    @Override
+    public boolean removeKit(String kitId) {
+        return kits.remove(kitId);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> prepareForGame(Collection<Player> players, String kitId) {
+        Kit kit = kits.get(kitId).orElseThrow(() -> new IllegalArgumentException("未知的装备包: " + kitId));
+        // 所有玩家共用同一份预先构建的物品数组，每名玩家一个任务，由主线程队列的 tick 预算分摊
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(players.size());
+        for (Player player : List.copyOf(players)) {
+            results.add(mainThread.supply(() -> {
+                if (!player.isOnline()) {
+                    plugin.getLogger().warning("玩家 " + player.getName() + " 在发放装备包 " + kitId + " 前已离线，已跳过。");
+                    return false;
+                }
+                try {
+                    kit.equip(player);
+                    return true;
+                } catch (Exception e) {
+                    plugin.getLogger().log(Level.SEVERE, "为玩家 " + player.getName() + " 发放装备包 " + kitId + " 时发生错误！", e);
+                    return false;
+                }
+            }));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                .thenApply(ignored -> results.stream().allMatch(CompletableFuture::join));
+    }
+
+    @Override
+    public OfflineEdit editOffline(UUID playerUUID) {
+        return new OfflineEditImpl(this, dataManager, offlineManager, playerUUID);
+    }
+
+    CompletableFuture<Boolean> runOffline(UUID playerUUID, Supplier<Boolean> operation) {
+        try {
+            return offlineExecutor.supply(operation);
+        } catch (RejectedExecutionException e) {
+            plugin.getLogger().warning("离线玩家 " + playerUUID + " 的操作被拒绝: " + e.getMessage());
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    public MainThreadExecutor getMainThreadExecutor() {
+        return mainThread;
+    }
+
+    public OfflineIoExecutor getOfflineExecutor() {
+        return offlineExecutor;
+    }
+
+    public ItemBlobStore getItemStore() {
+        return dataManager.getItemStore();
+    }
+
+    /**
+     * 依次排空离线操作执行器、主线程队列和快照写入线程。
+     * 离线操作完成后提交的主线程后续任务（例如在线恢复的应用步骤）由随后的主线程排空执行；
+     * 这些任务再提交的离线操作在执行器关闭后直接在当前线程执行或被拒绝。
+     *
+     * @return 如果离线操作在超时前全部完成，返回 true
+     */
+    public boolean shutdown() {
+        boolean offlineDrained = offlineExecutor.shutdown(5, TimeUnit.SECONDS);
+        mainThread.shutdown();
+        dataManager.shutdown();
+        return offlineDrained;
+    }
+}
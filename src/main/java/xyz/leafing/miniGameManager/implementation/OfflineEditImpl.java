@@ -0,0 +1,200 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import de.tr7zw.nbtapi.NBTFile;
+import org.bukkit.Bukkit;
+import org.bukkit.GameMode;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import xyz.leafing.miniGameManager.api.OfflineEdit;
+import xyz.leafing.miniGameManager.api.SnapshotSection;
+import xyz.leafing.miniGameManager.utils.LazySnapshot;
+import xyz.leafing.miniGameManager.utils.OfflinePlayerManager;
+import xyz.leafing.miniGameManager.utils.PlayerDataSnapshot;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+class OfflineEditImpl implements OfflineEdit {
+
+    /**
+     * 一个修改步骤：在线时在主线程上作用于玩家，离线时转换为对 .dat 的 NBT 修改。
+     * 离线转换可能失败（例如找不到待恢复的快照），此时返回 empty。
+     * <p>
+     * prepare 在在线步骤之前于后台执行（例如读取快照），返回 false 时不再执行任何在线步骤；不需要准备时为 null。
+     * 在线步骤可以异步完成（例如传送），之后的步骤在它完成后才执行。
+     */
+    private record Step(Supplier<CompletableFuture<Boolean>> prepare, Function<Player, CompletableFuture<Boolean>> online,
+                        Supplier<Optional<Consumer<NBTFile>>> offline) {
+
+        Step(Function<Player, CompletableFuture<Boolean>> online, Supplier<Optional<Consumer<NBTFile>>> offline) {
+            this(null, online, offline);
+        }
+    }
+
+    private static Function<Player, CompletableFuture<Boolean>> now(Predicate<Player> action) {
+        return player -> CompletableFuture.completedFuture(action.test(player));
+    }
+
+    private final MiniGameServiceImpl service;
+    private final PlayerDataManager dataManager;
+    private final OfflinePlayerManager offlineManager;
+    private final UUID playerUUID;
+    private final List<Step> steps = new ArrayList<>();
+    // restorePendingData 读取的快照和实际恢复的区段，提交成功后从快照中移除这些区段
+    private LazySnapshot restoredSnapshot;
+    private Set<SnapshotSection> restoredSections;
+    private boolean restoresPendingData;
+    private boolean committed;
+
+    OfflineEditImpl(MiniGameServiceImpl service, PlayerDataManager dataManager, OfflinePlayerManager offlineManager, UUID playerUUID) {
+        this.service = service;
+        this.dataManager = dataManager;
+        this.offlineManager = offlineManager;
+        this.playerUUID = playerUUID;
+    }
+
+    @Override
+    public OfflineEdit restore(PlayerDataSnapshot snapshot) {
+        steps.add(new Step(
+                now(player -> dataManager.applySnapshot(player, snapshot)),
+                () -> Optional.of(offlineManager.restoreOperation(snapshot))));
+        return this;
+    }
+
+    @Override
+    public OfflineEdit restorePendingData() {
+        return restorePendingData(EnumSet.allOf(SnapshotSection.class));
+    }
+
+    @Override
+    public OfflineEdit restorePendingData(Set<SnapshotSection> sections) {
+        Set<SnapshotSection> selected = EnumSet.copyOf(sections);
+        restoresPendingData = true;
+        steps.add(new Step(
+                // 在线时在后台读取和解码，主线程只负责应用
+                () -> service.loadSnapshotAsync(playerUUID, selected)
+                        .thenApply(snapshot -> snapshot.flatMap(loaded -> selectPending(loaded, selected)).isPresent()),
+                now(player -> dataManager.applySnapshot(player, restoredSnapshot, restoredSections)),
+                () -> dataManager.loadSnapshot(playerUUID, selected)
+                        .flatMap(snapshot -> selectPending(snapshot, selected))
+                        .map(snapshot -> offlineManager.restoreOperation(snapshot, restoredSections))));
+        return this;
+    }
+
+    private Optional<LazySnapshot> selectPending(LazySnapshot snapshot, Set<SnapshotSection> selected) {
+        Set<SnapshotSection> available = service.restorableSections(playerUUID, snapshot, selected);
+        if (available.isEmpty()) {
+            return Optional.empty();
+        }
+        restoredSnapshot = snapshot;
+        restoredSections = available;
+        return Optional.of(snapshot);
+    }
+
+    @Override
+    public OfflineEdit teleport(Location location) {
+        steps.add(new Step(
+                // 与 MiniGameAPI.teleport 相同，先异步加载目标区块再 teleportAsync，传送完成后才继续之后的步骤
+                player -> service.teleportBatch(List.of(player.getUniqueId()), List.of(location)),
+                () -> Optional.of(offlineManager.teleportOperation(location))));
+        return this;
+    }
+
+    @Override
+    public OfflineEdit gameMode(GameMode gameMode) {
+        steps.add(new Step(
+                now(player -> {
+                    player.setGameMode(gameMode);
+                    return true;
+                }),
+                () -> Optional.of(offlineManager.gameModeOperation(gameMode))));
+        return this;
+    }
+
+    @Override
+    public OfflineEdit clearFullData() {
+        steps.add(new Step(
+                now(player -> {
+                    dataManager.clearFullData(player);
+                    return true;
+                }),
+                () -> Optional.of(offlineManager.clearFullDataOperation())));
+        return this;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> commit() {
+        if (committed) {
+            throw new IllegalStateException("OfflineEdit 已经提交过");
+        }
+        committed = true;
+        List<Step> pending = List.copyOf(steps);
+
+        Player onlinePlayer = Bukkit.getPlayer(playerUUID);
+        if (onlinePlayer != null && onlinePlayer.isOnline()) {
+            return prepare(pending).thenCompose(prepared -> !prepared
+                    ? CompletableFuture.completedFuture(false)
+                    : applyOnline(onlinePlayer, pending, 0)).thenCompose(applied -> !applied || !restoresPendingData
+                    ? CompletableFuture.completedFuture(applied)
+                    // 快照的改写在后台进行，不占用主线程
+                    : service.removeRestoredSections(playerUUID, restoredSnapshot, restoredSections));
+        }
+
+        return service.runOffline(playerUUID, () -> {
+            List<Consumer<NBTFile>> operations = new ArrayList<>(pending.size());
+            for (Step step : pending) {
+                Optional<Consumer<NBTFile>> operation = step.offline().get();
+                if (operation.isEmpty()) {
+                    return false;
+                }
+                operations.add(operation.get());
+            }
+            return offlineManager.editNBT(playerUUID, operations)
+                    && (!restoresPendingData || dataManager.removeRestoredSections(playerUUID, restoredSnapshot, restoredSections));
+        });
+    }
+
+    /**
+     * 在主线程上从 from 开始依次执行在线步骤。同步完成的步骤在同一个主线程任务中连续执行，
+     * 遇到尚未完成的步骤时等它完成，再把剩余步骤作为新的主线程任务提交。
+     */
+    private CompletableFuture<Boolean> applyOnline(Player player, List<Step> steps, int from) {
+        return service.getMainThreadExecutor().supply(() -> {
+            for (int i = from; i < steps.size(); i++) {
+                CompletableFuture<Boolean> result = steps.get(i).online().apply(player);
+                if (!result.isDone()) {
+                    int next = i + 1;
+                    return result.thenCompose(applied -> applied
+                            ? applyOnline(player, steps, next)
+                            : CompletableFuture.completedFuture(false));
+                }
+                if (!result.join()) {
+                    return CompletableFuture.completedFuture(false);
+                }
+            }
+            return CompletableFuture.completedFuture(true);
+        }).thenCompose(result -> result);
+    }
+
+    /**
+     * 按顺序执行各步骤的准备工作，任一步骤失败时跳过其余步骤。
+     */
+    private static CompletableFuture<Boolean> prepare(List<Step> steps) {
+        CompletableFuture<Boolean> prepared = CompletableFuture.completedFuture(true);
+        for (Step step : steps) {
+            if (step.prepare() != null) {
+                prepared = prepared.thenCompose(ok -> ok ? step.prepare().get() : CompletableFuture.completedFuture(false));
+            }
+        }
+        return prepared;
+    }
+}
@@ -0,0 +1,112 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 离线玩家文件读写专用的执行器，避免阻塞 IO 占用全服共享的 commonPool。
+ * 每个任务运行在独立的虚拟线程上，并发数由信号量限制；排队任务超过上限时直接拒绝。
+ */
+public class OfflineIoExecutor implements Executor {
+
+    private final ExecutorService threads = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("MiniGameManager-Offline-", 0).factory());
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final int capacity;
+    // 已提交但尚未结束的任务数（排队 + 执行中）
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public OfflineIoExecutor(int maxConcurrency, int maxQueued) {
+        int concurrency = Math.max(1, maxConcurrency);
+        // 公平信号量，保证先提交的操作先执行
+        this.permits = new Semaphore(concurrency, true);
+        this.maxConcurrency = concurrency;
+        this.capacity = concurrency + Math.max(0, maxQueued);
+    }
+
+    /**
+     * @throws RejectedExecutionException 排队的任务已达上限，或执行器已关闭
+     */
+    @Override
+    public void execute(Runnable command) {
+        if (pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            throw new RejectedExecutionException("离线操作队列已满 (排队 " + getQueued() + ", 执行中 " + getInFlight() + ")");
+        }
+        submit(command);
+    }
+
+    /**
+     * 提交一个必须完成的后续操作（例如快照已应用到玩家后的删除），不受排队上限限制，但仍受并发上限限制。
+     *
+     * @throws RejectedExecutionException 执行器已关闭
+     */
+    public <T> CompletableFuture<T> supplyRequired(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, command -> {
+            pending.incrementAndGet();
+            submit(command);
+        });
+    }
+
+    private void submit(Runnable command) {
+        try {
+            threads.execute(() -> {
+                permits.acquireUninterruptibly();
+                inFlight.incrementAndGet();
+                try {
+                    command.run();
+                } finally {
+                    inFlight.decrementAndGet();
+                    pending.decrementAndGet();
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.decrementAndGet();
+            throw e;
+        }
+    }
+
+    /**
+     * @throws RejectedExecutionException 排队的任务已达上限，或执行器已关闭
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> supplier) {
+        return CompletableFuture.supplyAsync(supplier, this);
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getQueued() {
+        return Math.max(0, pending.get() - inFlight.get());
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * 不再接收新任务，并等待已提交的任务执行完毕。
+     *
+     * @return 如果所有任务都在超时前完成，返回 true
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) {
+        threads.shutdown();
+        try {
+            return threads.awaitTermination(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
@@ -1,6 +1,5 @@
 package xyz.leafing.miniGameManager.implementation;
 
-import de.tr7zw.nbtapi.NBTCompound;
 import de.tr7zw.nbtapi.NBTContainer;
 import de.tr7zw.nbtapi.NBTItem;
 import org.bukkit.GameMode;
@@ -10,115 +9,573 @@ import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
 import org.bukkit.potion.PotionEffect;
 import xyz.leafing.miniGameManager.MiniGameManager;
+import xyz.leafing.miniGameManager.api.SnapshotSection;
+import xyz.leafing.miniGameManager.jfr.MainThreadApplyEvent;
+import xyz.leafing.miniGameManager.jfr.SnapshotLoadEvent;
+import xyz.leafing.miniGameManager.jfr.SnapshotSaveEvent;
+import xyz.leafing.miniGameManager.utils.ItemBlobs;
+import xyz.leafing.miniGameManager.utils.LazySnapshot;
+import xyz.leafing.miniGameManager.utils.OperationMetrics;
+import xyz.leafing.miniGameManager.utils.OperationMetrics.Operation;
 import xyz.leafing.miniGameManager.utils.PlayerDataSnapshot;
+import xyz.leafing.miniGameManager.utils.SnapshotCodec;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.logging.Level;
 
 public class PlayerDataManager {
 
+    private static final int RESTORED_CLEANUP_ATTEMPTS = 3;
+
     private final MiniGameManager plugin;
+    private final OperationMetrics metrics;
     private final File dataFolder;
+    // 快照和物品的存放位置，共享模式下是多个服务端共用的目录
+    private final File storageFolder;
+    private final SnapshotStore store;
+    // 共享模式下的存储，未启用共享时为 null
+    private final SharedSnapshotStore sharedStore;
+    // 共享模式下每个玩家的待恢复状态最后一次与存储核对时的存储修改计数。
+    // 只是核对的缓存：玩家退出或快照被删除时移除，超过上限时整体清空，缺少记录只会多核对一次
+    private final Map<UUID, Long> validatedGenerations = new ConcurrentHashMap<>();
+    private static final int MAX_VALIDATED_GENERATIONS = 4096;
+    private final ThreadPoolExecutor writeExecutor;
+    // 已编码、等待同一批提交的快照，只在写入线程上访问
+    private final List<StagedWrite> batch = new ArrayList<>();
+    private final Map<UUID, CompletableFuture<Boolean>> pendingWrites = new ConcurrentHashMap<>();
+    // 磁盘上存在待恢复快照的玩家，避免每次查询都访问文件系统
+    private final Set<UUID> pendingSnapshots = ConcurrentHashMap.newKeySet();
+    private final ItemBlobStore itemStore;
+    // 每个快照引用的物品哈希，用于替换或删除快照时释放引用
+    private final Map<UUID, List<byte[]>> snapshotReferences = new ConcurrentHashMap<>();
+    // 启动恢复校验期间快照已被保存、改写或删除的玩家，恢复不再登记或丢弃它们的旧快照；只在自身上同步
+    private final Set<UUID> replacedDuringRecovery = new HashSet<>();
+
+    private record StagedWrite(UUID uuid, String playerName, PlayerDataSnapshot snapshot, byte[] data,
+                               List<byte[]> acquired, long startNanos, SnapshotSaveEvent event,
+                               CompletableFuture<Boolean> future) {
+    }
+
+    private record Prefetched(LazySnapshot snapshot, long expiresAtNanos) {
+    }
+
+    // 预登录阶段提前解码好的快照，加入游戏时直接取用
+    private final Map<UUID, Prefetched> prefetched = new ConcurrentHashMap<>();
 
     public PlayerDataManager(MiniGameManager plugin) {
         this.plugin = plugin;
+        this.metrics = plugin.getMetrics();
         this.dataFolder = new File(plugin.getDataFolder(), "playerdata");
         if (!dataFolder.exists()) {
             //noinspection ResultOfMethodCallIgnored
             dataFolder.mkdirs();
         }
+        String sharedPath = plugin.getConfig().getString("storage.shared-path", "");
+        this.storageFolder = sharedPath.isEmpty() ? plugin.getDataFolder() : new File(sharedPath);
+        this.store = openStore(plugin.getConfig().getString("storage.type", FileSnapshotStore.NAME));
+        this.sharedStore = store instanceof SharedSnapshotStore shared ? shared : null;
+        // 单线程写入，保证同一玩家的快照按提交顺序落盘
+        this.writeExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "MiniGameManager-Snapshot-Writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 待恢复索引和物品引用计数由启动恢复在后台重建，见 StartupRecovery
+        this.itemStore = new ItemBlobStore(new File(storageFolder, "items"), isShared());
     }
 
-    public boolean saveData(Player player) {
-        File playerFile = getPlayerFile(player.getUniqueId());
-        FileConfiguration data = YamlConfiguration.loadConfiguration(playerFile);
+    /**
+     * 读取 storage.log.segment-size-mb，超出范围时调整到最近的有效值。按 long 计算，较大的配置值不会溢出。
+     */
+    private long logSegmentBytes() {
+        long megabytes = plugin.getConfig().getLong("storage.log.segment-size-mb", 64L);
+        long clamped = Math.clamp(megabytes, LogSnapshotStore.MIN_SEGMENT_BYTES >> 20, LogSnapshotStore.MAX_SEGMENT_BYTES >> 20);
+        if (clamped != megabytes) {
+            plugin.getLogger().warning("storage.log.segment-size-mb 应在 " + (LogSnapshotStore.MIN_SEGMENT_BYTES >> 20) + " 到 "
+                    + (LogSnapshotStore.MAX_SEGMENT_BYTES >> 20) + " 之间，当前值 " + megabytes + " 已调整为 " + clamped + "。");
+        }
+        return clamped << 20;
+    }
+
+    /**
+     * 打开指定类型的快照存储，供当前存储和启动时的迁移使用。
+     *
+     * @throws IllegalStateException 类型未知或存储无法打开时
+     */
+    SnapshotStore openStore(String type) {
+        try {
+            SnapshotStore opened = switch (type.toLowerCase(Locale.ROOT)) {
+                case FileSnapshotStore.NAME -> new FileSnapshotStore(new File(storageFolder, "playerdata"), fileLayout());
+                case SqliteSnapshotStore.NAME -> new SqliteSnapshotStore(new File(storageFolder, "snapshots.db"),
+                        plugin.getConfig().getInt("storage.batch-size", 64));
+                case LogSnapshotStore.NAME -> {
+                    if (isShared()) {
+                        throw new IllegalStateException("log 存储的索引只在单个服务端的内存中，不支持 storage.shared-path");
+                    }
+                    yield new LogSnapshotStore(new File(storageFolder, "snapshot-log"),
+                            logSegmentBytes(),
+                            plugin.getConfig().getDouble("storage.log.compact-threshold", 0.5),
+                            plugin.getConfig().getInt("storage.batch-size", 64), plugin.getLogger());
+                }
+                default -> throw new IllegalStateException("未知的快照存储类型: " + type + "，可选值为 file、sqlite 或 log");
+            };
+            return isShared() ? new SharedSnapshotStore(opened, storageFolder.toPath()) : opened;
+        } catch (IOException e) {
+            throw new IllegalStateException("无法打开快照存储 " + type, e);
+        }
+    }
+
+    private FileSnapshotStore.Layout fileLayout() {
+        String layout = plugin.getConfig().getString("storage.file.layout", "flat");
+        try {
+            return FileSnapshotStore.Layout.valueOf(layout.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("未知的快照目录布局: " + layout + "，可选值为 flat 或 sharded");
+        }
+    }
+
+    /**
+     * 当前使用文件存储时，在后台把仍按另一种目录布局存放的快照移到当前布局。应在启动恢复结束后调用。
+     */
+    void migrateFileLayout() {
+        SnapshotStore files = sharedStore != null ? sharedStore.getDelegate() : store;
+        if (files instanceof FileSnapshotStore fileStore) {
+            new LayoutMigration(plugin, fileStore, sharedStore,
+                    plugin.getConfig().getInt("storage.file.migrate-parallelism", 4)).start();
+        }
+    }
+
+    /**
+     * 旧格式 YAML 快照和文件存储的快照所在目录。
+     */
+    File getDataFolder() {
+        return dataFolder;
+    }
+
+    SnapshotStore getStore() {
+        return store;
+    }
+
+    /**
+     * @return 是否与其他服务端共用快照存储
+     */
+    public boolean isShared() {
+        return !storageFolder.equals(plugin.getDataFolder());
+    }
 
-        data.set("inventory.main", serializeItemStackArray(player.getInventory().getContents()));
-        data.set("inventory.armor", serializeItemStackArray(player.getInventory().getArmorContents()));
-        data.set("inventory.extra", serializeItemStackArray(player.getInventory().getExtraContents()));
-        data.set("enderchest", serializeItemStackArray(player.getEnderChest().getContents()));
+    /**
+     * 快照和物品的根目录，共享模式下为 storage.shared-path。
+     */
+    File getStorageFolder() {
+        return storageFolder;
+    }
+
+    /**
+     * 文件存储的快照目录。未启用共享时与 {@link #getDataFolder()} 相同。
+     */
+    File getStoreFolder() {
+        return new File(storageFolder, "playerdata");
+    }
 
-        data.set("stats.health", player.getHealth());
-        data.set("stats.max_health", Objects.requireNonNull(player.getAttribute(Attribute.GENERIC_MAX_HEALTH)).getBaseValue());
-        data.set("stats.food", player.getFoodLevel());
-        data.set("stats.saturation", player.getSaturation());
+    /**
+     * 由启动恢复在列出目录后登记有快照的玩家，校验完成前 {@link #hasData(UUID)} 就能只查内存索引。
+     */
+    void markPending(Collection<UUID> players) {
+        pendingSnapshots.addAll(players);
+    }
 
-        data.set("exp.level", player.getLevel());
-        data.set("exp.progress", player.getExp());
-        data.set("exp.total", player.getTotalExperience());
+    /**
+     * 由启动恢复登记一个已校验的快照及其引用的物品。旧格式快照没有物品引用。
+     * 校验期间快照已被替换或删除时不登记，新快照的引用由写入路径自行计数。
+     */
+    void registerSnapshot(UUID uuid, List<byte[]> references) {
+        synchronized (replacedDuringRecovery) {
+            if (replacedDuringRecovery.contains(uuid)) {
+                return;
+            }
+            pendingSnapshots.add(uuid);
+            if (!references.isEmpty()) {
+                itemStore.retain(references);
+                snapshotReferences.put(uuid, references);
+            }
+        }
+    }
 
-        data.set("gamemode", player.getGameMode().name());
-        data.set("potioneffects", player.getActivePotionEffects());
-        data.set("flying", player.isFlying());
-        data.set("allow-flight", player.getAllowFlight());
+    /**
+     * 由启动恢复在校验后发现玩家没有可用快照时调用，例如快照已损坏且没有旧格式快照。
+     */
+    void unregisterSnapshot(UUID uuid) {
+        synchronized (replacedDuringRecovery) {
+            if (!replacedDuringRecovery.contains(uuid)) {
+                pendingSnapshots.remove(uuid);
+            }
+        }
+    }
 
+    /**
+     * 在写入线程上删除启动恢复发现已损坏的快照，与保存按提交顺序执行。
+     *
+     * @return 如果删除了快照；快照在校验期间已被替换时返回 false，新快照保持不变
+     */
+    boolean discardCorruptSnapshot(UUID uuid) throws IOException {
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            writeExecutor.execute(() -> {
+                if (!batch.isEmpty()) {
+                    commitBatch();
+                }
+                try {
+                    result.complete(deleteUnlessReplaced(uuid));
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            return deleteUnlessReplaced(uuid);
+        }
         try {
-            data.save(playerFile);
+            return result.join();
+        } catch (CompletionException e) {
+            throw (IOException) e.getCause();
+        }
+    }
+
+    private boolean deleteUnlessReplaced(UUID uuid) throws IOException {
+        synchronized (replacedDuringRecovery) {
+            if (replacedDuringRecovery.contains(uuid)) {
+                return false;
+            }
+            store.delete(uuid);
             return true;
-        } catch (IOException e) {
-            plugin.getLogger().log(Level.SEVERE, "无法保存玩家 " + player.getName() + " 的数据！", e);
-            return false;
         }
     }
 
-    public boolean restoreData(Player player) {
-        Optional<PlayerDataSnapshot> snapshotOpt = loadSnapshot(player.getUniqueId());
-        if (snapshotOpt.isEmpty()) {
-            plugin.getLogger().warning("找不到玩家 " + player.getName() + " 的数据快照，无法恢复。");
-            return false;
+    /**
+     * 快照被保存、改写或删除后调用。启动恢复结束后不再记录。
+     */
+    private void markReplaced(UUID uuid) {
+        if (!plugin.getRecoveryGate().isFinished()) {
+            synchronized (replacedDuringRecovery) {
+                replacedDuringRecovery.add(uuid);
+            }
+        }
+    }
+
+    /**
+     * 启动恢复结束后调用，释放校验期间记录的玩家。
+     */
+    void recoveryComplete() {
+        synchronized (replacedDuringRecovery) {
+            replacedDuringRecovery.clear();
+        }
+    }
+
+    /**
+     * 启动恢复尚未处理完该玩家的文件时等待，避免读到未校验的快照或与修复操作冲突。
+     */
+    private void awaitRecovery(UUID uuid) {
+        long timeoutMillis = plugin.getConfig().getLong("locks.operation-timeout-ms", 10000);
+        if (!plugin.getRecoveryGate().awaitRecovered(uuid, timeoutMillis, TimeUnit.MILLISECONDS)) {
+            plugin.getLogger().warning("等待玩家 " + uuid + " 的启动恢复超时，继续执行操作。");
         }
-        PlayerDataSnapshot snapshot = snapshotOpt.get();
+    }
+
+    /**
+     * 在主线程上复制玩家当前状态，序列化与写盘交给后台写入线程完成。
+     *
+     * @return 当快照已持久化到磁盘时完成的 future
+     */
+    public CompletableFuture<Boolean> saveDataAsync(Player player) {
+        long start = System.nanoTime();
+        UUID uuid = player.getUniqueId();
+        String playerName = player.getName();
+        PlayerDataSnapshot snapshot = captureSnapshot(player);
+        return submitWrite(uuid, playerName, snapshot, start);
+    }
+
+    /**
+     * 复制玩家的背包、末影箱和状态。必须在主线程调用。
+     * 物品会被克隆，因为 Bukkit 返回的是与玩家背包联动的镜像对象。
+     */
+    public PlayerDataSnapshot captureSnapshot(Player player) {
+        return new PlayerDataSnapshot(
+                copyItemStackArray(player.getInventory().getContents()),
+                copyItemStackArray(player.getInventory().getArmorContents()),
+                copyItemStackArray(player.getInventory().getExtraContents()),
+                copyItemStackArray(player.getEnderChest().getContents()),
+                player.getHealth(),
+                Objects.requireNonNull(player.getAttribute(Attribute.GENERIC_MAX_HEALTH)).getBaseValue(),
+                player.getFoodLevel(),
+                player.getSaturation(),
+                player.getLevel(),
+                player.getExp(),
+                player.getTotalExperience(),
+                player.getGameMode(),
+                List.copyOf(player.getActivePotionEffects()),
+                player.isFlying(),
+                player.getAllowFlight()
+        );
+    }
 
+    private CompletableFuture<Boolean> submitWrite(UUID uuid, String playerName, PlayerDataSnapshot snapshot, long startNanos) {
+        long submittedAt = System.nanoTime();
+        prefetched.remove(uuid);
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        pendingWrites.put(uuid, future);
         try {
-            clearData(player);
+            writeExecutor.execute(() -> {
+                SnapshotSaveEvent event = new SnapshotSaveEvent();
+                event.begin();
+                event.captureTime = submittedAt - startNanos;
+                event.queueTime = System.nanoTime() - submittedAt;
+                StagedWrite staged = encodeSnapshot(uuid, playerName, snapshot, startNanos, event, future);
+                if (staged != null) {
+                    batch.add(staged);
+                }
+                // 队列里没有更多快照或批次已满时提交，空闲时不会为了凑批而推迟
+                if (!batch.isEmpty() && (writeExecutor.getQueue().isEmpty() || batch.size() >= store.getMaxBatchSize())) {
+                    commitBatch();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingWrites.remove(uuid, future);
+            metrics.record(Operation.SAVE, startNanos, false);
+            plugin.getLogger().log(Level.SEVERE, "写入线程已关闭，无法保存玩家 " + playerName + " 的数据！", e);
+            future.complete(false);
+        }
+        return future;
+    }
 
-            player.getInventory().setContents(snapshot.inventory());
-            player.getInventory().setArmorContents(snapshot.armor());
-            player.getInventory().setExtraContents(snapshot.extra());
-            player.getEnderChest().setContents(snapshot.enderChest());
+    /**
+     * 编码快照并把新物品写入物品存储。失败时直接完成写入，返回 null。
+     */
+    private StagedWrite encodeSnapshot(UUID uuid, String playerName, PlayerDataSnapshot snapshot, long startNanos,
+                                       SnapshotSaveEvent event, CompletableFuture<Boolean> future) {
+        awaitRecovery(uuid);
+        List<byte[]> acquired = new ArrayList<>();
+        StagedWrite staged = null;
+        try {
+            long encodeStart = System.nanoTime();
+            ItemBlobs blobs = plugin.getConfig().getBoolean("snapshot.dedup-items", true) ? itemStore.recording(acquired) : null;
+            byte[] data = SnapshotCodec.encode(snapshot, plugin.getConfig().getBoolean("snapshot.compression", true), blobs);
+            event.encodeTime = System.nanoTime() - encodeStart;
+            event.payloadBytes = data.length;
+            staged = new StagedWrite(uuid, playerName, snapshot, data, acquired, startNanos, event, future);
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.SEVERE, "无法保存玩家 " + playerName + " 的数据！", e);
+            completeWrite(new StagedWrite(uuid, playerName, snapshot, null, acquired, startNanos, event, future), false, 0);
+        }
+        return staged;
+    }
 
-            // **--- FIX START ---**
-            // 1. 恢复基础最大生命值
-            AttributeInstance maxHealthAttribute = Objects.requireNonNull(player.getAttribute(Attribute.GENERIC_MAX_HEALTH));
-            maxHealthAttribute.setBaseValue(snapshot.maxHealth());
+    /**
+     * 在一次存储提交中写入当前批次的所有快照，然后逐个完成写入。
+     */
+    private void commitBatch() {
+        Map<UUID, byte[]> snapshots = new LinkedHashMap<>();
+        for (StagedWrite staged : batch) {
+            // 同一批中同一玩家的后一个快照覆盖前一个
+            snapshots.put(staged.uuid(), staged.data());
+        }
+        long writeStart = System.nanoTime();
+        boolean success;
+        try {
+            // 快照引用的新物品必须先于快照落盘
+            itemStore.syncWrites();
+            store.saveAll(snapshots);
+            success = true;
+        } catch (Exception e) {
+            List<String> names = batch.stream().map(StagedWrite::playerName).distinct().toList();
+            plugin.getLogger().log(Level.SEVERE, "无法保存以下玩家的数据: " + names, e);
+            success = false;
+        }
+        long writeTime = System.nanoTime() - writeStart;
+        for (StagedWrite staged : batch) {
+            completeWrite(staged, success, writeTime);
+        }
+        batch.clear();
+    }
 
-            // 2. 恢复药水效果 (这会应用 health_boost 等修正值)
-            for (PotionEffect effect : snapshot.potionEffects()) {
-                player.addPotionEffect(effect);
+    private void completeWrite(StagedWrite staged, boolean success, long writeTime) {
+        UUID uuid = staged.uuid();
+        if (success) {
+            metrics.addBytesWritten(Operation.SAVE, staged.data().length);
+            markReplaced(uuid);
+            pendingSnapshots.add(uuid);
+            // 旧快照被覆盖后，其引用的物品不再需要
+            List<byte[]> previous = staged.acquired().isEmpty() ? snapshotReferences.remove(uuid) : snapshotReferences.put(uuid, staged.acquired());
+            if (previous != null) {
+                itemStore.release(previous);
             }
+            // 新格式写入成功后，旧的 YAML 快照就不再需要了
+            try {
+                Files.deleteIfExists(getLegacyPlayerFile(uuid).toPath());
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "无法删除玩家 " + staged.playerName() + " 的旧格式快照。", e);
+            }
+        } else {
+            itemStore.release(staged.acquired());
+        }
+        metrics.record(Operation.SAVE, staged.startNanos(), success);
+
+        SnapshotSaveEvent event = staged.event();
+        event.writeTime = writeTime;
+        event.end();
+        if (event.shouldCommit()) {
+            event.setPlayer(uuid, plugin.getOwningPluginName(uuid));
+            event.setSections(staged.snapshot());
+            event.success = success;
+            event.commit();
+        }
+        pendingWrites.remove(uuid, staged.future());
+        staged.future().complete(success);
+    }
 
-            // 3. 在所有属性和效果都恢复后，最后设置当前生命值
-            //    使用 Math.min 确保不会超过当前有效的最大生命值
-            player.setHealth(Math.min(snapshot.health(), maxHealthAttribute.getValue()));
-            // **--- FIX END ---**
+    /**
+     * 等待该玩家尚未写完的快照落盘，避免读取或删除到旧文件。
+     */
+    private void awaitPendingWrite(UUID uuid) {
+        CompletableFuture<Boolean> pending = pendingWrites.get(uuid);
+        if (pending != null) {
+            pending.join();
+        }
+    }
 
-            player.setFoodLevel(snapshot.foodLevel());
-            player.setSaturation(snapshot.saturation());
+    /**
+     * 停止接收新的写入请求，并等待已排队的快照全部落盘。
+     */
+    public void shutdown() {
+        writeExecutor.shutdown();
+        try {
+            if (!writeExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+                plugin.getLogger().severe("等待快照写入超时！以下玩家的数据可能未保存: " + pendingWrites.keySet());
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            store.close();
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "关闭快照存储失败。", e);
+        }
+    }
 
-            player.setTotalExperience(0);
-            player.setLevel(0);
-            player.setExp(0);
-            player.giveExp(snapshot.totalExperience());
+    /**
+     * 将快照内容应用到在线玩家身上，不会删除磁盘上的快照。必须在主线程调用。
+     */
+    public boolean applySnapshot(Player player, PlayerDataSnapshot snapshot) {
+        return applySnapshot(player, LazySnapshot.of(snapshot), EnumSet.allOf(SnapshotSection.class));
+    }
 
-            player.setGameMode(snapshot.gameMode());
-            player.setAllowFlight(snapshot.allowFlight());
-            player.setFlying(snapshot.flying());
+    /**
+     * 只将快照中选定的区段应用到在线玩家身上，其余部分保持不变，不会删除磁盘上的快照。必须在主线程调用。
+     * 这些区段应事先在后台线程解码，见 {@link #loadSnapshot(UUID, Set)}。
+     */
+    public boolean applySnapshot(Player player, LazySnapshot snapshot, Set<SnapshotSection> sections) {
+        MainThreadApplyEvent event = new MainThreadApplyEvent();
+        event.begin();
+        long itemsStart = System.nanoTime();
+        try {
+            PlayerInventory inventory = player.getInventory();
+            if (sections.contains(SnapshotSection.INVENTORY)) {
+                if (sections.contains(SnapshotSection.ARMOR)) {
+                    inventory.setContents(snapshot.inventory());
+                } else {
+                    // 完整的背包数组中也包含盔甲槽位，只恢复背包时不能覆盖当前盔甲
+                    inventory.setStorageContents(Arrays.copyOf(snapshot.inventory(), inventory.getStorageContents().length));
+                }
+                inventory.setExtraContents(snapshot.extra());
+            }
+            if (sections.contains(SnapshotSection.ARMOR)) {
+                inventory.setArmorContents(snapshot.armor());
+            }
+            if (sections.contains(SnapshotSection.ENDER_CHEST)) {
+                player.getEnderChest().setContents(snapshot.enderChest());
+            }
+            long effectsStart = System.nanoTime();
+            event.itemsTime = effectsStart - itemsStart;
+
+            // **--- FIX START ---**
+            // 1. 恢复基础最大生命值
+            AttributeInstance maxHealthAttribute = Objects.requireNonNull(player.getAttribute(Attribute.GENERIC_MAX_HEALTH));
+            LazySnapshot.Stats stats = sections.contains(SnapshotSection.STATS) ? snapshot.stats() : null;
+            if (stats != null) {
+                maxHealthAttribute.setBaseValue(stats.maxHealth());
+            }
+
+            // 2. 恢复药水效果 (这会应用 health_boost 等修正值)
+            if (sections.contains(SnapshotSection.EFFECTS)) {
+                for (PotionEffect effect : player.getActivePotionEffects()) {
+                    player.removePotionEffect(effect.getType());
+                }
+                for (PotionEffect effect : snapshot.potionEffects()) {
+                    player.addPotionEffect(effect);
+                }
+            }
+            long statsStart = System.nanoTime();
+            event.effectsTime = statsStart - effectsStart;
+
+            if (stats != null) {
+                // 3. 在所有属性和效果都恢复后，最后设置当前生命值
+                //    使用 Math.min 确保不会超过当前有效的最大生命值
+                player.setHealth(Math.min(stats.health(), maxHealthAttribute.getValue()));
+                // **--- FIX END ---**
+
+                player.setFoodLevel(stats.foodLevel());
+                player.setSaturation(stats.saturation());
+
+                player.setTotalExperience(0);
+                player.setLevel(0);
+                player.setExp(0);
+                player.giveExp(stats.totalExperience());
+
+                player.setGameMode(stats.gameMode());
+                player.setAllowFlight(stats.allowFlight());
+                player.setFlying(stats.flying());
+            }
+            event.statsTime = System.nanoTime() - statsStart;
+            event.success = true;
 
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "恢复玩家 " + player.getName() + " 的数据时发生严重错误！数据文件将暂时保留以供排查。", e);
             return false;
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.setPlayer(player.getUniqueId(), plugin.getOwningPluginName(player.getUniqueId()));
+                event.setSections(snapshot);
+                event.commit();
+            }
         }
-
-        return deleteDataFile(player.getUniqueId());
+        return true;
     }
 
     public void clearData(Player player) {
@@ -146,27 +603,305 @@ public class PlayerDataManager {
         player.setExp(0f);
     }
 
+    public ItemBlobStore getItemStore() {
+        return itemStore;
+    }
+
+    public Set<UUID> getPendingPlayers() {
+        Set<UUID> players = new HashSet<>(pendingSnapshots);
+        players.addAll(pendingWrites.keySet());
+        return players;
+    }
+
+    /**
+     * 只查询内存中的待恢复索引，不会等待启动恢复或访问磁盘，可以在主线程调用。
+     * 启动恢复在列出目录后就会登记所有有快照的玩家，校验发现快照损坏时再移除。
+     * 共享模式下索引由 {@link #prefetchSnapshot(UUID)}（预登录时）和读取快照时与存储核对。
+     */
     public boolean hasData(UUID uuid) {
-        return getPlayerFile(uuid).exists();
+        return pendingWrites.containsKey(uuid) || pendingSnapshots.contains(uuid);
+    }
+
+    /**
+     * 玩家退出后不再保留共享模式下的核对记录，下次登录时重新核对。
+     */
+    public void forgetValidation(UUID uuid) {
+        validatedGenerations.remove(uuid);
+    }
+
+    /**
+     * 查询本地的待恢复索引。共享模式下其他服务端可能保存或删除了该玩家的快照，
+     * 只有存储修改计数变化后才会重新向存储核对，计数未变时与非共享模式一样只查内存。
+     * 核对会访问存储，只在后台线程调用。
+     */
+    private boolean isPending(UUID uuid) {
+        if (sharedStore == null) {
+            return pendingSnapshots.contains(uuid);
+        }
+        // 先读计数再查询，查询期间发生的修改会让下一次调用重新核对
+        long generation = sharedStore.getGeneration();
+        Long validated = validatedGenerations.get(uuid);
+        if (validated == null || validated != generation) {
+            try {
+                if (store.exists(uuid) || getLegacyPlayerFile(uuid).exists()) {
+                    pendingSnapshots.add(uuid);
+                } else {
+                    pendingSnapshots.remove(uuid);
+                }
+                if (validatedGenerations.size() >= MAX_VALIDATED_GENERATIONS) {
+                    validatedGenerations.clear();
+                }
+                validatedGenerations.put(uuid, generation);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.WARNING, "无法查询共享存储中玩家 " + uuid + " 的快照，使用本地缓存。", e);
+            }
+        }
+        return pendingSnapshots.contains(uuid);
     }
 
     public boolean deleteDataFile(UUID uuid) {
-        File playerFile = getPlayerFile(uuid);
-        if (playerFile.exists()) {
-            if (!playerFile.delete()) {
-                plugin.getLogger().warning("无法删除玩家 " + uuid + " 的数据文件: " + playerFile.getPath());
-                return false;
+        awaitRecovery(uuid);
+        prefetched.remove(uuid);
+        awaitPendingWrite(uuid);
+        boolean success = true;
+        try {
+            store.delete(uuid);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "无法删除玩家 " + uuid + " 的数据快照。", e);
+            success = false;
+        }
+        File legacyFile = getLegacyPlayerFile(uuid);
+        if (legacyFile.exists() && !legacyFile.delete()) {
+            plugin.getLogger().warning("无法删除玩家 " + uuid + " 的数据文件: " + legacyFile.getPath());
+            success = false;
+        }
+        if (success) {
+            markReplaced(uuid);
+            validatedGenerations.remove(uuid);
+            pendingSnapshots.remove(uuid);
+            List<byte[]> references = snapshotReferences.remove(uuid);
+            if (references != null) {
+                itemStore.release(references);
             }
         }
-        return true;
+        return success;
+    }
+
+    /**
+     * 删除已经应用到玩家身上的快照。失败时短暂等待后重试，仍然失败时以 SEVERE 级别报告：
+     * 此时玩家已拿到快照内容，残留的快照会在下次恢复时再次应用，导致回档或物品复制。
+     */
+    public boolean deleteRestoredSnapshot(UUID uuid) {
+        if (retry(() -> deleteDataFile(uuid))) {
+            return true;
+        }
+        plugin.getLogger().severe("玩家 " + uuid + " 的快照已经恢复，但删除快照失败！请尽快手动删除该快照，"
+                + "否则下次恢复时会再次应用，导致玩家回档或物品复制。");
+        return false;
+    }
+
+    /**
+     * 从快照中移除已经应用到玩家身上的区段。快照中的区段全部恢复后删除整个快照，
+     * 否则只保留尚未恢复的区段，之后仍可恢复这些区段。失败时的处理与 {@link #deleteRestoredSnapshot(UUID)} 相同。
+     *
+     * @param snapshot 恢复时读取的快照
+     */
+    public boolean removeRestoredSections(UUID uuid, LazySnapshot snapshot, Set<SnapshotSection> restored) {
+        Set<SnapshotSection> remaining = snapshot.getSections();
+        remaining.removeAll(restored);
+        if (remaining.isEmpty()) {
+            return deleteRestoredSnapshot(uuid);
+        }
+        if (retry(() -> rewriteWithout(uuid, snapshot, restored))) {
+            return true;
+        }
+        plugin.getLogger().severe("玩家 " + uuid + " 的快照区段 " + restored + " 已经恢复，但从快照中移除这些区段失败！"
+                + "请勿再次恢复这些区段，否则会导致玩家回档或物品复制。");
+        return false;
     }
 
+    private boolean retry(Supplier<Boolean> operation) {
+        for (int attempt = 1; attempt <= RESTORED_CLEANUP_ATTEMPTS; attempt++) {
+            if (operation.get()) {
+                return true;
+            }
+            if (attempt < RESTORED_CLEANUP_ATTEMPTS) {
+                try {
+                    Thread.sleep(100L * attempt);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在写入线程上重写快照，与保存按提交顺序执行，不会覆盖之后保存的新快照。
+     */
+    private boolean rewriteWithout(UUID uuid, LazySnapshot snapshot, Set<SnapshotSection> removed) {
+        prefetched.remove(uuid);
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        try {
+            writeExecutor.execute(() -> {
+                // 先落盘此前暂存的快照，保证读到的是最新的存储内容
+                if (!batch.isEmpty()) {
+                    commitBatch();
+                }
+                result.complete(storeWithout(uuid, snapshot, removed));
+            });
+        } catch (RejectedExecutionException e) {
+            // 写入线程已关闭，队列中的写入都已完成
+            awaitPendingWrite(uuid);
+            return storeWithout(uuid, snapshot, removed);
+        }
+        return result.join();
+    }
+
+    private boolean storeWithout(UUID uuid, LazySnapshot snapshot, Set<SnapshotSection> removed) {
+        awaitRecovery(uuid);
+        try {
+            byte[] stored = store.load(uuid);
+            if (stored != null && snapshot.isReplacedBy(stored)) {
+                // 恢复期间玩家又保存了新快照，新快照不包含已恢复的内容，保留即可
+                plugin.getLogger().info("玩家 " + uuid + " 的快照在恢复期间已被新快照替换，保留新快照。");
+                return true;
+            }
+            byte[] data = snapshot.without(removed, plugin.getConfig().getBoolean("snapshot.compression", true));
+            List<byte[]> references = SnapshotCodec.readReferences(data);
+            if (!references.isEmpty()) {
+                itemStore.retain(references);
+            }
+            try {
+                store.save(uuid, data);
+            } catch (IOException e) {
+                itemStore.release(references);
+                throw e;
+            }
+            markReplaced(uuid);
+            pendingSnapshots.add(uuid);
+            // 剩余区段引用的物品已单独计数，旧快照的引用可以释放
+            List<byte[]> previous = references.isEmpty() ? snapshotReferences.remove(uuid) : snapshotReferences.put(uuid, references);
+            if (previous != null) {
+                itemStore.release(previous);
+            }
+            Files.deleteIfExists(getLegacyPlayerFile(uuid).toPath());
+            return true;
+        } catch (Exception e) {
+            plugin.getLogger().log(Level.WARNING, "无法从玩家 " + uuid + " 的快照中移除已恢复的区段。", e);
+            return false;
+        }
+    }
+
+    /**
+     * 在后台线程上提前读取并解码快照，缓存一小段时间供随后的 {@link #loadSnapshot(UUID)} 使用。
+     * 适合在 AsyncPlayerPreLoginEvent 中调用。共享模式下同时与存储核对待恢复状态，
+     * 之后主线程上的 {@link #hasData(UUID)} 只需查询内存。
+     */
+    public void prefetchSnapshot(UUID uuid) {
+        long now = System.nanoTime();
+        prefetched.values().removeIf(entry -> entry.expiresAtNanos() - now < 0);
+        if (!pendingWrites.containsKey(uuid) && !isPending(uuid)) {
+            return;
+        }
+        long ttlNanos = TimeUnit.SECONDS.toNanos(plugin.getConfig().getLong("snapshot.prefetch-ttl-seconds", 30));
+        readSnapshot(uuid, EnumSet.allOf(SnapshotSection.class))
+                .ifPresent(snapshot -> prefetched.put(uuid, new Prefetched(snapshot, System.nanoTime() + ttlNanos)));
+    }
+
+    /**
+     * 读取并完整解码快照。优先使用预取的结果，否则从磁盘读取，因此应避免在主线程调用。
+     * 只恢复过一部分的快照不完整，此时返回 empty。
+     */
     public Optional<PlayerDataSnapshot> loadSnapshot(UUID uuid) {
-        File playerFile = getPlayerFile(uuid);
-        if (!playerFile.exists()) {
+        return loadSnapshot(uuid, EnumSet.allOf(SnapshotSection.class))
+                .filter(snapshot -> snapshot.getSections().size() == SnapshotSection.values().length)
+                .map(LazySnapshot::toSnapshot);
+    }
+
+    /**
+     * 读取快照并在当前线程上解码给定的区段，其他区段在第一次访问时才解码。
+     * 优先使用预取的结果，否则从磁盘读取，因此应避免在主线程调用。
+     *
+     * @param sections 需要立即解码的区段，为空时只解析区段表
+     * @return 给定区段已解码的快照；没有快照或这些区段损坏时为 empty
+     */
+    public Optional<LazySnapshot> loadSnapshot(UUID uuid, Set<SnapshotSection> sections) {
+        Prefetched entry = prefetched.remove(uuid);
+        if (entry != null && entry.expiresAtNanos() - System.nanoTime() > 0) {
+            return Optional.of(entry.snapshot());
+        }
+        return readSnapshot(uuid, sections);
+    }
+
+    private Optional<LazySnapshot> readSnapshot(UUID uuid, Set<SnapshotSection> sections) {
+        awaitRecovery(uuid);
+        awaitPendingWrite(uuid);
+        if (!isPending(uuid)) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        SnapshotLoadEvent event = new SnapshotLoadEvent();
+        event.begin();
+        byte[] data;
+        try {
+            data = store.load(uuid);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.SEVERE, "加载玩家 " + uuid + " 的数据快照失败！", e);
+            metrics.record(Operation.LOAD, start, false);
+            commitLoadEvent(event, uuid, Optional.empty());
             return Optional.empty();
         }
+        if (data != null) {
+            Optional<LazySnapshot> snapshot = Optional.empty();
+            try {
+                long decodeStart = System.nanoTime();
+                event.readTime = decodeStart - start;
+                event.payloadBytes = data.length;
+                metrics.addBytesRead(Operation.LOAD, data.length);
+                LazySnapshot view = LazySnapshot.parse(data, itemStore);
+                view.decode(sections);
+                snapshot = Optional.of(view);
+                event.decodeTime = System.nanoTime() - decodeStart;
+                return snapshot;
+            } catch (Exception e) {
+                plugin.getLogger().log(Level.SEVERE, "加载玩家 " + uuid + " 的数据快照失败！", e);
+                return Optional.empty();
+            } finally {
+                metrics.record(Operation.LOAD, start, snapshot.isPresent());
+                commitLoadEvent(event, uuid, snapshot);
+            }
+        }
+
+        File legacyFile = getLegacyPlayerFile(uuid);
+        if (!legacyFile.exists()) {
+            return Optional.empty();
+        }
+        metrics.addBytesRead(Operation.LOAD, legacyFile.length());
+        Optional<PlayerDataSnapshot> snapshot = loadLegacySnapshot(uuid, legacyFile);
+        metrics.record(Operation.LOAD, start, snapshot.isPresent());
+        event.legacyFormat = true;
+        event.payloadBytes = legacyFile.length();
+        event.readTime = System.nanoTime() - start;
+        Optional<LazySnapshot> view = snapshot.map(LazySnapshot::of);
+        commitLoadEvent(event, uuid, view);
+        // 读到旧格式快照时顺带在后台转换为二进制格式
+        snapshot.ifPresent(legacy -> submitWrite(uuid, uuid.toString(), legacy, System.nanoTime()));
+        return view;
+    }
 
+    private void commitLoadEvent(SnapshotLoadEvent event, UUID uuid, Optional<LazySnapshot> snapshot) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.setPlayer(uuid, plugin.getOwningPluginName(uuid));
+            snapshot.ifPresent(event::setSections);
+            event.success = snapshot.isPresent();
+            event.commit();
+        }
+    }
+
+    private Optional<PlayerDataSnapshot> loadLegacySnapshot(UUID uuid, File playerFile) {
         FileConfiguration data = YamlConfiguration.loadConfiguration(playerFile);
         try {
             ItemStack[] inventory = deserializeItemStackArray(data.getStringList("inventory.main"));
@@ -197,17 +932,13 @@ public class PlayerDataManager {
         }
     }
 
-    private List<String> serializeItemStackArray(ItemStack[] items) {
-        List<String> nbtStrings = new ArrayList<>();
-        for (ItemStack item : items) {
-            if (item == null || item.getType().isAir()) {
-                nbtStrings.add("");
-            } else {
-                NBTCompound fullItemNbt = NBTItem.convertItemtoNBT(item);
-                nbtStrings.add(fullItemNbt.toString());
-            }
+    private ItemStack[] copyItemStackArray(ItemStack[] items) {
+        ItemStack[] copy = new ItemStack[items.length];
+        for (int i = 0; i < items.length; i++) {
+            ItemStack item = items[i];
+            copy[i] = (item == null || item.getType().isAir()) ? null : item.clone();
         }
-        return nbtStrings;
+        return copy;
     }
 
     private ItemStack[] deserializeItemStackArray(List<String> nbtStrings) {
@@ -228,7 +959,7 @@ public class PlayerDataManager {
         return items;
     }
 
-    private File getPlayerFile(UUID uuid) {
+    private File getLegacyPlayerFile(UUID uuid) {
         return new File(dataFolder, uuid.toString() + ".yml");
     }
 }
\ No newline at end of file
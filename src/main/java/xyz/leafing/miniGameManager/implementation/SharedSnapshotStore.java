@@ -0,0 +1,138 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 让同一台主机上的多个服务端共用一个快照存储。
+ * <ul>
+ *     <li>所有修改都在 {@code store.lock} 的文件锁内进行，不同进程的写入互斥</li>
+ *     <li>每次修改后递增 {@code generation} 文件中的计数。该文件被内存映射，
+ *     读取计数只是一次内存访问，各服务端据此判断本地缓存的待恢复玩家是否可能已过期</li>
+ * </ul>
+ * 读取不加锁：文件后端通过原子重命名写入，SQLite 后端由 WAL 保证读到完整的已提交数据。
+ */
+public class SharedSnapshotStore implements SnapshotStore {
+
+    private static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    // 文件锁属于整个进程，同一进程内的线程先在这里排队，否则会抛出 OverlappingFileLockException。
+    // 迁移时来源和目标两个存储共用同一个锁文件，因此这里是静态的
+    private static final ReentrantLock LOCAL_LOCK = new ReentrantLock();
+
+    private final SnapshotStore delegate;
+    private final FileChannel lockChannel;
+    private final FileChannel generationChannel;
+    private final MappedByteBuffer generation;
+
+    public SharedSnapshotStore(SnapshotStore delegate, Path directory) throws IOException {
+        this.delegate = delegate;
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve("store.lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.generationChannel = FileChannel.open(directory.resolve("generation"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.generation = generationChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+    }
+
+    /**
+     * @return 共享存储被任意服务端修改的次数
+     */
+    public long getGeneration() {
+        return (long) LONG.getVolatile(generation, 0);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public void save(UUID uuid, byte[] data) throws IOException {
+        modify(() -> {
+            delegate.save(uuid, data);
+            return null;
+        });
+    }
+
+    @Override
+    public void saveAll(Map<UUID, byte[]> snapshots) throws IOException {
+        modify(() -> {
+            delegate.saveAll(snapshots);
+            return null;
+        });
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return delegate.getMaxBatchSize();
+    }
+
+    @Override
+    public byte[] load(UUID uuid) throws IOException {
+        return delegate.load(uuid);
+    }
+
+    @Override
+    public boolean exists(UUID uuid) throws IOException {
+        return delegate.exists(uuid);
+    }
+
+    @Override
+    public boolean delete(UUID uuid) throws IOException {
+        return modify(() -> delegate.delete(uuid));
+    }
+
+    @Override
+    public Set<UUID> list() throws IOException {
+        return delegate.list();
+    }
+
+    SnapshotStore getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            delegate.close();
+        } finally {
+            lockChannel.close();
+            generationChannel.close();
+        }
+    }
+
+    @FunctionalInterface
+    interface Modification<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * 在文件锁内执行对共享存储的修改，也用于绕过本类直接修改底层存储的操作（如目录布局迁移）。
+     */
+    <T> T modify(Modification<T> modification) throws IOException {
+        LOCAL_LOCK.lock();
+        try (FileLock ignored = lockChannel.lock()) {
+            try {
+                return modification.run();
+            } finally {
+                // 即使修改失败也递增，失败的修改可能已经部分生效
+                LONG.setVolatile(generation, 0, (long) LONG.getVolatile(generation, 0) + 1);
+            }
+        } finally {
+            LOCAL_LOCK.unlock();
+        }
+    }
+}
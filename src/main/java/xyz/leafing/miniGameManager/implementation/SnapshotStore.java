@@ -0,0 +1,53 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 快照的持久化后端。存储的是 {@link xyz.leafing.miniGameManager.utils.SnapshotCodec} 编码后的字节，
+ * 后端不关心快照格式。实现必须是线程安全的。
+ */
+public interface SnapshotStore {
+
+    /**
+     * @return 配置文件中使用的后端名称
+     */
+    String getName();
+
+    /**
+     * 写入一个快照，返回时数据已持久化。
+     */
+    void save(UUID uuid, byte[] data) throws IOException;
+
+    /**
+     * 写入一批快照，返回时全部已持久化。支持事务的后端应在一次提交中完成，要么全部成功要么全部失败。
+     */
+    void saveAll(Map<UUID, byte[]> snapshots) throws IOException;
+
+    /**
+     * 写入线程最多合并多少个快照调用一次 {@link #saveAll(Map)}。
+     * 每次写入都单独落盘的后端返回 1，写入线程就不会为了凑批而推迟完成写入。
+     */
+    int getMaxBatchSize();
+
+    /**
+     * @return 快照内容，不存在时返回 null
+     */
+    byte[] load(UUID uuid) throws IOException;
+
+    boolean exists(UUID uuid) throws IOException;
+
+    /**
+     * @return 如果快照存在并已被删除，返回 true
+     */
+    boolean delete(UUID uuid) throws IOException;
+
+    /**
+     * @return 所有存有快照的玩家，即待恢复的玩家
+     */
+    Set<UUID> list() throws IOException;
+
+    void close() throws IOException;
+}
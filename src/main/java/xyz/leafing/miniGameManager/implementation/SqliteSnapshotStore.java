@@ -0,0 +1,193 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 所有快照保存在一个 SQLite 数据库中。使用 WAL 模式，读取不会被写入阻塞；
+ * 写入线程把多个快照合并为一次事务提交，只需要一次 fsync。
+ * <p>
+ * 使用服务端自带的 sqlite-jdbc 驱动。写入和读取各用一个连接，分别在连接对象上同步。
+ */
+public class SqliteSnapshotStore implements SnapshotStore {
+
+    public static final String NAME = "sqlite";
+
+    private static final String UPSERT = "INSERT INTO snapshots (uuid, data, updated_at) VALUES (?, ?, ?) "
+            + "ON CONFLICT(uuid) DO UPDATE SET data = excluded.data, updated_at = excluded.updated_at";
+
+    private final File file;
+    private final int maxBatchSize;
+    private final Connection writeConnection;
+    private final Connection readConnection;
+
+    public SqliteSnapshotStore(File file, int maxBatchSize) throws IOException {
+        this.file = file;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        Connection write = null;
+        try {
+            write = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try (Statement statement = write.createStatement()) {
+                statement.execute("PRAGMA journal_mode=WAL");
+                // 与文件后端一样，提交返回时数据必须已经落盘
+                statement.execute("PRAGMA synchronous=FULL");
+                statement.execute("PRAGMA busy_timeout=5000");
+                statement.execute("CREATE TABLE IF NOT EXISTS snapshots ("
+                        + "uuid TEXT PRIMARY KEY, data BLOB NOT NULL, updated_at INTEGER NOT NULL)");
+            }
+            this.writeConnection = write;
+            this.readConnection = DriverManager.getConnection("jdbc:sqlite:" + file.getAbsolutePath());
+            try (Statement statement = readConnection.createStatement()) {
+                statement.execute("PRAGMA busy_timeout=5000");
+            }
+        } catch (SQLException e) {
+            closeQuietly(write);
+            throw new IOException("无法打开快照数据库 " + file, e);
+        }
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void save(UUID uuid, byte[] data) throws IOException {
+        saveAll(Map.of(uuid, data));
+    }
+
+    @Override
+    public void saveAll(Map<UUID, byte[]> snapshots) throws IOException {
+        if (snapshots.isEmpty()) {
+            return;
+        }
+        synchronized (writeConnection) {
+            try {
+                writeConnection.setAutoCommit(false);
+                try (PreparedStatement statement = writeConnection.prepareStatement(UPSERT)) {
+                    long now = System.currentTimeMillis();
+                    for (Map.Entry<UUID, byte[]> entry : snapshots.entrySet()) {
+                        statement.setString(1, entry.getKey().toString());
+                        statement.setBytes(2, entry.getValue());
+                        statement.setLong(3, now);
+                        statement.addBatch();
+                    }
+                    statement.executeBatch();
+                }
+                writeConnection.commit();
+            } catch (SQLException e) {
+                try {
+                    writeConnection.rollback();
+                } catch (SQLException ignored) {
+                }
+                throw new IOException("写入 " + snapshots.size() + " 个快照到数据库失败", e);
+            } finally {
+                try {
+                    writeConnection.setAutoCommit(true);
+                } catch (SQLException ignored) {
+                }
+            }
+        }
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    @Override
+    public byte[] load(UUID uuid) throws IOException {
+        synchronized (readConnection) {
+            try (PreparedStatement statement = readConnection.prepareStatement("SELECT data FROM snapshots WHERE uuid = ?")) {
+                statement.setString(1, uuid.toString());
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next() ? result.getBytes(1) : null;
+                }
+            } catch (SQLException e) {
+                throw new IOException("从数据库读取玩家 " + uuid + " 的快照失败", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean exists(UUID uuid) throws IOException {
+        synchronized (readConnection) {
+            try (PreparedStatement statement = readConnection.prepareStatement("SELECT 1 FROM snapshots WHERE uuid = ?")) {
+                statement.setString(1, uuid.toString());
+                try (ResultSet result = statement.executeQuery()) {
+                    return result.next();
+                }
+            } catch (SQLException e) {
+                throw new IOException("查询玩家 " + uuid + " 的快照失败", e);
+            }
+        }
+    }
+
+    @Override
+    public boolean delete(UUID uuid) throws IOException {
+        synchronized (writeConnection) {
+            try (PreparedStatement statement = writeConnection.prepareStatement("DELETE FROM snapshots WHERE uuid = ?")) {
+                statement.setString(1, uuid.toString());
+                return statement.executeUpdate() > 0;
+            } catch (SQLException e) {
+                throw new IOException("从数据库删除玩家 " + uuid + " 的快照失败", e);
+            }
+        }
+    }
+
+    /**
+     * 只读取主键索引，不会加载快照内容。
+     */
+    @Override
+    public Set<UUID> list() throws IOException {
+        Set<UUID> players = new HashSet<>();
+        synchronized (readConnection) {
+            try (Statement statement = readConnection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT uuid FROM snapshots")) {
+                while (result.next()) {
+                    try {
+                        players.add(UUID.fromString(result.getString(1)));
+                    } catch (IllegalArgumentException ignored) {
+                    }
+                }
+            } catch (SQLException e) {
+                throw new IOException("列出数据库 " + file + " 中的快照失败", e);
+            }
+        }
+        return players;
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (readConnection) {
+            closeQuietly(readConnection);
+        }
+        synchronized (writeConnection) {
+            try {
+                writeConnection.close();
+            } catch (SQLException e) {
+                throw new IOException("关闭快照数据库 " + file + " 失败", e);
+            }
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+        }
+    }
+}
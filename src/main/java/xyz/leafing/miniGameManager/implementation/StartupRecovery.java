@@ -0,0 +1,482 @@
+package xyz.leafing.miniGameManager.implementation;
+
+import xyz.leafing.miniGameManager.MiniGameManager;
+import xyz.leafing.miniGameManager.utils.AtomicFiles;
+import xyz.leafing.miniGameManager.utils.RecoveryGate;
+import xyz.leafing.miniGameManager.utils.SnapshotCodec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 启动时在后台检查上次运行遗留的文件，不阻塞 onEnable：
+ * <ul>
+ *     <li>世界 playerdata 中旧版本留下的 .dat.mgm_bak 备份：.dat 完好时删除，.dat 损坏或缺失时用备份还原</li>
+ *     <li>配置了 storage.migrate-from 时：把另一种存储中的快照批量迁移到当前存储</li>
+ *     <li>被截断或损坏的快照：移入 quarantine/ 目录，不再视为待恢复</li>
+ *     <li>所有目录（包括分片布局的子目录）中未完成写入的临时文件：删除</li>
+ *     <li>有效的快照：登记到待恢复索引，并重建物品引用计数</li>
+ * </ul>
+ * 目录先被并行列出，有快照的玩家立即登记到待恢复索引，之后按玩家并行处理；
+ * 只有对需要修复文件（临时文件、备份、待迁移的快照）的玩家的操作需要等待。
+ */
+public class StartupRecovery {
+
+    private static final String LEGACY_BACKUP_SUFFIX = ".dat.mgm_bak";
+    // 共享存储中的临时文件可能属于其他服务端正在进行的写入，只清理足够旧的
+    private static final Duration SHARED_TEMP_MIN_AGE = Duration.ofHours(1);
+
+    public record Report(int snapshots, int legacySnapshots, int migrated, int quarantined, int tempFilesRemoved,
+                         int backupsRestored, int backupsRemoved, int missingItems, int unreferencedItems,
+                         long elapsedNanos) {
+    }
+
+    /**
+     * 一个玩家在各目录中的文件。
+     */
+    private static final class PlayerFiles {
+        private boolean stored;
+        private boolean migrating;
+        private Path legacySnapshot;
+        private Path backup;
+        private final List<Path> tempFiles = new ArrayList<>();
+
+        boolean hasSnapshot() {
+            return stored || migrating || legacySnapshot != null;
+        }
+
+        /**
+         * 有未完成写入的临时文件、旧版本留下的备份或待迁移的快照。
+         * 只有快照的玩家不需要等待：损坏的快照在读取时就会失败，校验后的丢弃也不会覆盖期间保存的新快照。
+         */
+        boolean needsRepair() {
+            return !tempFiles.isEmpty() || backup != null || migrating;
+        }
+    }
+
+    private final MiniGameManager plugin;
+    private final PlayerDataManager dataManager;
+    private final Path worldPlayerData;
+    private final RecoveryGate gate;
+    private final Path quarantine;
+    private final String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"));
+
+    private final AtomicInteger snapshots = new AtomicInteger();
+    private final AtomicInteger legacySnapshots = new AtomicInteger();
+    private int migrated;
+    private final AtomicInteger quarantined = new AtomicInteger();
+    private final AtomicInteger tempFilesRemoved = new AtomicInteger();
+    private final AtomicInteger backupsRestored = new AtomicInteger();
+    private final AtomicInteger backupsRemoved = new AtomicInteger();
+    private final AtomicInteger missingItems = new AtomicInteger();
+
+    /**
+     * @param worldPlayerData 主世界的 playerdata 目录，不存在时为 null
+     */
+    StartupRecovery(MiniGameManager plugin, PlayerDataManager dataManager, Path worldPlayerData, RecoveryGate gate) {
+        this.plugin = plugin;
+        this.dataManager = dataManager;
+        this.worldPlayerData = worldPlayerData;
+        this.gate = gate;
+        this.quarantine = plugin.getDataFolder().toPath().resolve("quarantine");
+    }
+
+    /**
+     * 在后台线程上开始恢复。
+     *
+     * @return 恢复结束时完成的 future
+     */
+    CompletableFuture<Report> start() {
+        CompletableFuture<Report> result = new CompletableFuture<>();
+        Thread.ofVirtual().name("MiniGameManager-Recovery").start(() -> {
+            try {
+                result.complete(run());
+            } catch (Throwable t) {
+                plugin.getLogger().log(Level.SEVERE, "启动恢复扫描失败！未处理的文件将在下次启动时再次检查。", t);
+                result.completeExceptionally(t);
+            } finally {
+                gate.finish();
+            }
+        });
+        return result;
+    }
+
+    private Report run() throws Exception {
+        long start = System.nanoTime();
+        Map<UUID, PlayerFiles> players = new HashMap<>();
+        List<Path> itemTempFiles = new ArrayList<>();
+        SnapshotStore store = dataManager.getStore();
+        SnapshotStore source = openMigrationSource(store);
+
+        // 1. 并行列出各个目录和存储，登记受影响的玩家后放行其他玩家的操作
+        try (ExecutorService listers = Executors.newVirtualThreadPerTaskExecutor()) {
+            var world = listers.submit(() -> list(worldPlayerData));
+            var snapshotsDir = listers.submit(() -> list(dataManager.getDataFolder().toPath()));
+            Path storeFolder = dataManager.getStoreFolder().toPath();
+            var sharedDir = storeFolder.equals(dataManager.getDataFolder().toPath()) ? null : listers.submit(() -> list(storeFolder));
+            // 分片布局的临时文件在 ab/cd/ 子目录中
+            var shardDirs = listers.submit(() -> listShardFiles(storeFolder));
+            var stored = listers.submit(store::list);
+            var migrating = source == null ? null : listers.submit(source::list);
+            var items = listers.submit(() -> listItemTempFiles(dataManager.getItemStore().getRoot()));
+            classifyWorldFiles(world.get(), players);
+            classifySnapshotFiles(snapshotsDir.get(), players);
+            if (sharedDir != null) {
+                classifySnapshotFiles(sharedDir.get(), players);
+            }
+            classifySnapshotFiles(shardDirs.get(), players);
+            for (UUID uuid : stored.get()) {
+                players.computeIfAbsent(uuid, key -> new PlayerFiles()).stored = true;
+            }
+            if (migrating != null) {
+                for (UUID uuid : migrating.get()) {
+                    players.computeIfAbsent(uuid, key -> new PlayerFiles()).migrating = true;
+                }
+            }
+            itemTempFiles.addAll(items.get());
+        }
+        // 有快照的玩家先登记到待恢复索引，校验在后台进行；只有需要修复文件的玩家的操作要等待
+        dataManager.markPending(players.entrySet().stream()
+                .filter(entry -> entry.getValue().hasSnapshot())
+                .map(Map.Entry::getKey)
+                .toList());
+        gate.markAffected(players.entrySet().stream()
+                .filter(entry -> entry.getValue().needsRepair())
+                .map(Map.Entry::getKey)
+                .toList());
+        gate.listingComplete();
+
+        if (source != null) {
+            try {
+                migrate(source, store, players);
+            } catch (IOException e) {
+                plugin.getLogger().log(Level.SEVERE, "快照迁移中断！未迁移的快照仍保留在 " + source.getName() + " 中，下次启动时会继续迁移。", e);
+            } finally {
+                source.close();
+            }
+        }
+
+        // 2. 按玩家并行修复和校验，每个玩家处理完立即放行
+        int parallelism = Math.max(1, plugin.getConfig().getInt("recovery.parallelism", 4));
+        Semaphore permits = new Semaphore(parallelism);
+        try (ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Map.Entry<UUID, PlayerFiles> entry : players.entrySet()) {
+                workers.execute(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        recover(entry.getKey(), entry.getValue());
+                    } catch (Exception e) {
+                        plugin.getLogger().log(Level.SEVERE, "恢复玩家 " + entry.getKey() + " 的文件时出错！", e);
+                    } finally {
+                        permits.release();
+                        gate.recovered(entry.getKey());
+                    }
+                });
+            }
+        }
+        for (Path temp : itemTempFiles) {
+            deleteTempFile(temp);
+        }
+
+        dataManager.recoveryComplete();
+
+        // 3. 所有快照的引用都已登记，清理不再被引用的物品
+        int unreferenced = dataManager.getItemStore().sweepUnreferenced();
+
+        Report report = new Report(snapshots.get(), legacySnapshots.get(), migrated, quarantined.get(), tempFilesRemoved.get(),
+                backupsRestored.get(), backupsRemoved.get(), missingItems.get(), unreferenced, System.nanoTime() - start);
+        log(report);
+        return report;
+    }
+
+    /**
+     * @return 配置的迁移来源，未配置或与当前存储相同时返回 null
+     */
+    private SnapshotStore openMigrationSource(SnapshotStore store) {
+        String from = plugin.getConfig().getString("storage.migrate-from", "none");
+        if (from.equalsIgnoreCase("none") || from.equalsIgnoreCase(store.getName())) {
+            return null;
+        }
+        plugin.getLogger().info("正在把快照从 " + from + " 迁移到 " + store.getName() + "，相关玩家的操作会等待迁移完成。");
+        return dataManager.openStore(from);
+    }
+
+    /**
+     * 按批读取来源中的快照写入当前存储，写入成功后才从来源删除。
+     * 两边都有快照时保留当前存储中的，来源中的那份移入隔离目录。
+     */
+    private void migrate(SnapshotStore source, SnapshotStore store, Map<UUID, PlayerFiles> players) throws IOException {
+        Map<UUID, byte[]> batch = new LinkedHashMap<>();
+        for (Map.Entry<UUID, PlayerFiles> entry : players.entrySet()) {
+            PlayerFiles files = entry.getValue();
+            if (!files.migrating) {
+                continue;
+            }
+            UUID uuid = entry.getKey();
+            byte[] data = source.load(uuid);
+            if (data == null) {
+                continue;
+            }
+            if (files.stored) {
+                quarantine(uuid + "." + source.getName(), data);
+                source.delete(uuid);
+                continue;
+            }
+            batch.put(uuid, data);
+            if (batch.size() >= Math.max(store.getMaxBatchSize(), 64)) {
+                flushMigration(source, store, batch, players);
+            }
+        }
+        flushMigration(source, store, batch, players);
+        plugin.getLogger().info("已迁移 " + migrated + " 个快照到 " + store.getName() + "，可以将 storage.migrate-from 改回 none。");
+    }
+
+    private void flushMigration(SnapshotStore source, SnapshotStore store, Map<UUID, byte[]> batch,
+                                Map<UUID, PlayerFiles> players) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        store.saveAll(batch);
+        for (UUID uuid : batch.keySet()) {
+            players.get(uuid).stored = true;
+            source.delete(uuid);
+        }
+        migrated += batch.size();
+        batch.clear();
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isRegularFile)) {
+            stream.forEach(files::add);
+        }
+        return files;
+    }
+
+    private static List<Path> listShardFiles(Path storeFolder) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path outer : FileSnapshotStore.listShards(storeFolder)) {
+            for (Path inner : FileSnapshotStore.listShards(outer)) {
+                files.addAll(list(inner));
+            }
+        }
+        return files;
+    }
+
+    private static List<Path> listItemTempFiles(Path root) throws IOException {
+        List<Path> temps = new ArrayList<>();
+        for (Path shard : listDirectories(root)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(shard, "*" + AtomicFiles.TEMP_SUFFIX)) {
+                stream.forEach(temps::add);
+            }
+        }
+        return temps;
+    }
+
+    private static List<Path> listDirectories(Path directory) throws IOException {
+        List<Path> directories = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return directories;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            stream.forEach(directories::add);
+        }
+        return directories;
+    }
+
+    private static void classifyWorldFiles(List<Path> files, Map<UUID, PlayerFiles> players) {
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(LEGACY_BACKUP_SUFFIX)) {
+                PlayerFiles entry = entryFor(players, name, LEGACY_BACKUP_SUFFIX);
+                if (entry != null) {
+                    entry.backup = file;
+                }
+            } else if (name.endsWith(".dat" + AtomicFiles.TEMP_SUFFIX)) {
+                PlayerFiles entry = entryFor(players, name, ".dat" + AtomicFiles.TEMP_SUFFIX);
+                if (entry != null) {
+                    entry.tempFiles.add(file);
+                }
+            }
+        }
+    }
+
+    private static void classifySnapshotFiles(List<Path> files, Map<UUID, PlayerFiles> players) {
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            PlayerFiles entry;
+            // 当前存储中的快照由 SnapshotStore.list() 列出，这里只处理旧格式和临时文件
+            if (name.endsWith(".yml")) {
+                if ((entry = entryFor(players, name, ".yml")) != null) {
+                    entry.legacySnapshot = file;
+                }
+            } else if (name.endsWith(AtomicFiles.TEMP_SUFFIX)) {
+                String base = name.substring(0, name.length() - AtomicFiles.TEMP_SUFFIX.length());
+                int dot = base.lastIndexOf('.');
+                if (dot > 0 && (entry = entryFor(players, base, base.substring(dot))) != null) {
+                    entry.tempFiles.add(file);
+                }
+            }
+        }
+    }
+
+    private static PlayerFiles entryFor(Map<UUID, PlayerFiles> players, String name, String suffix) {
+        try {
+            UUID uuid = UUID.fromString(name.substring(0, name.length() - suffix.length()));
+            return players.computeIfAbsent(uuid, key -> new PlayerFiles());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void recover(UUID uuid, PlayerFiles files) throws IOException {
+        for (Path temp : files.tempFiles) {
+            deleteTempFile(temp);
+        }
+        if (files.backup != null) {
+            recoverBackup(uuid, files.backup);
+        }
+
+        byte[] data = files.stored ? dataManager.getStore().load(uuid) : null;
+        files.stored = data != null;
+        if (data != null) {
+            List<byte[]> references;
+            try {
+                // 读取引用会完整解析快照正文，截断或损坏的快照会在这里抛出异常
+                references = SnapshotCodec.readReferences(data);
+            } catch (IOException | RuntimeException e) {
+                plugin.getLogger().severe("玩家 " + uuid + " 的快照已损坏 (" + e + ")，已移入隔离目录。");
+                quarantine(uuid + ".bin", data);
+                // 校验期间玩家可能已保存了新快照，此时保留新快照
+                files.stored = !dataManager.discardCorruptSnapshot(uuid);
+                references = null;
+            }
+            if (references != null) {
+                for (byte[] hash : references) {
+                    if (!dataManager.getItemStore().exists(hash)) {
+                        missingItems.incrementAndGet();
+                    }
+                }
+                dataManager.registerSnapshot(uuid, references);
+                snapshots.incrementAndGet();
+            }
+        }
+        if (!files.stored && files.legacySnapshot != null) {
+            dataManager.registerSnapshot(uuid, List.of());
+            legacySnapshots.incrementAndGet();
+        } else if (!files.stored) {
+            dataManager.unregisterSnapshot(uuid);
+        }
+    }
+
+    /**
+     * 旧版本在修改 .dat 前会留下备份，正常结束时删除。备份仍在说明上次修改中途崩溃了。
+     */
+    private void recoverBackup(UUID uuid, Path backup) throws IOException {
+        Path dat = backup.resolveSibling(uuid + ".dat");
+        if (isValidGzip(dat)) {
+            Files.deleteIfExists(backup);
+            backupsRemoved.incrementAndGet();
+            return;
+        }
+        if (!isValidGzip(backup)) {
+            plugin.getLogger().severe("玩家 " + uuid + " 的 .dat 及其备份都已损坏，备份已移入隔离目录，请手动检查。");
+            quarantine(backup);
+            return;
+        }
+        if (Files.exists(dat)) {
+            quarantine(dat);
+        }
+        try {
+            Files.move(backup, dat, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(backup, dat, StandardCopyOption.REPLACE_EXISTING);
+        }
+        backupsRestored.incrementAndGet();
+        plugin.getLogger().warning("玩家 " + uuid + " 的 .dat 在上次离线修改中损坏，已从备份还原。");
+    }
+
+    /**
+     * 完整解压一遍，GZIP 的 CRC 和长度校验可以发现截断或损坏的文件。
+     */
+    private static boolean isValidGzip(Path file) {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            byte[] buffer = new byte[8192];
+            //noinspection StatementWithEmptyBody
+            while (in.read(buffer) >= 0) {
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void quarantine(Path file) throws IOException {
+        Files.createDirectories(quarantine);
+        Files.move(file, quarantine.resolve(file.getFileName() + "." + timestamp), StandardCopyOption.REPLACE_EXISTING);
+        quarantined.incrementAndGet();
+    }
+
+    private void quarantine(String name, byte[] data) throws IOException {
+        Files.createDirectories(quarantine);
+        Files.write(quarantine.resolve(name + "." + timestamp), data);
+        quarantined.incrementAndGet();
+    }
+
+    private void deleteTempFile(Path temp) {
+        try {
+            if (dataManager.isShared() && temp.startsWith(dataManager.getStorageFolder().toPath())
+                    && Files.getLastModifiedTime(temp).toInstant().isAfter(Instant.now().minus(SHARED_TEMP_MIN_AGE))) {
+                return;
+            }
+            if (Files.deleteIfExists(temp)) {
+                tempFilesRemoved.incrementAndGet();
+            }
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "无法删除临时文件 " + temp, e);
+        }
+    }
+
+    private void log(Report report) {
+        plugin.getLogger().info(String.format("启动恢复扫描完成，用时 %d ms: 待恢复快照 %d (旧格式 %d)，清理临时文件 %d，清理物品 %d。",
+                report.elapsedNanos() / 1_000_000, report.snapshots() + report.legacySnapshots(), report.legacySnapshots(),
+                report.tempFilesRemoved(), report.unreferencedItems()));
+        if (report.quarantined() > 0) {
+            plugin.getLogger().severe("有 " + report.quarantined() + " 个损坏的文件已移入 " + quarantine + "，请手动检查。");
+        }
+        if (report.backupsRestored() + report.backupsRemoved() > 0) {
+            plugin.getLogger().warning("处理了旧版本遗留的 .dat 备份: 还原 " + report.backupsRestored() + " 个，删除过期备份 " + report.backupsRemoved() + " 个。");
+        }
+        if (report.missingItems() > 0) {
+            plugin.getLogger().severe("有 " + report.missingItems() + " 个快照物品引用在 items/ 中找不到，相关玩家的恢复将会失败。");
+        }
+    }
+}
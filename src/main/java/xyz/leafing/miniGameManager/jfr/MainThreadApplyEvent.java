@@ -0,0 +1,24 @@
+package xyz.leafing.miniGameManager.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("xyz.leafing.minigamemanager.MainThreadApply")
+@Label("主线程应用快照")
+@Description("在主线程上把快照应用到在线玩家身上，可直接与 tick 卡顿对应")
+public class MainThreadApplyEvent extends SnapshotEvent {
+
+    @Label("物品耗时")
+    @Timespan
+    public long itemsTime;
+
+    @Label("属性与药水效果耗时")
+    @Timespan
+    public long effectsTime;
+
+    @Label("状态耗时")
+    @Timespan
+    public long statsTime;
+}
@@ -0,0 +1,40 @@
+package xyz.leafing.miniGameManager.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("xyz.leafing.minigamemanager.OfflineEdit")
+@Label("离线修改")
+@Description("对离线玩家 .dat 的一次读取-修改-写入，数据大小为修改前的文件大小")
+public class OfflineEditEvent extends SnapshotEvent {
+
+    @Label("修改步骤数")
+    public int operations;
+
+    @Label("等待锁耗时")
+    @Timespan
+    public long lockWaitTime;
+
+    @Label("读取解析耗时")
+    @Timespan
+    public long readTime;
+
+    @Label("修改耗时")
+    @Timespan
+    public long applyTime;
+
+    @Label("写盘耗时")
+    @Timespan
+    public long writeTime;
+
+    @Label("流式修改")
+    @Description("只改写少数标签，未解析整棵 NBT 树")
+    public boolean streamed;
+
+    @Label("写入大小")
+    @DataAmount
+    public long writtenBytes;
+}
@@ -0,0 +1,87 @@
+package xyz.leafing.miniGameManager.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+import org.bukkit.inventory.ItemStack;
+import xyz.leafing.miniGameManager.api.SnapshotSection;
+import xyz.leafing.miniGameManager.utils.LazySnapshot;
+import xyz.leafing.miniGameManager.utils.PlayerDataSnapshot;
+
+import java.util.UUID;
+
+/**
+ * MiniGameManager 所有 JFR 事件的公共字段。事件线程由 JFR 自动记录。
+ * 未开启录制时 {@link #shouldCommit()} 返回 false，调用方据此跳过额外的计时和统计。
+ */
+@Category("MiniGameManager")
+@StackTrace(false)
+public abstract class SnapshotEvent extends Event {
+
+    @Label("玩家 UUID")
+    public String playerUuid;
+
+    @Label("所属插件")
+    @Description("事件发生时玩家所在小游戏的插件，不在游戏中时为空")
+    public String plugin;
+
+    @Label("数据大小")
+    @DataAmount
+    public long payloadBytes;
+
+    @Label("背包物品数")
+    public int inventoryItems;
+
+    @Label("盔甲物品数")
+    public int armorItems;
+
+    @Label("副手物品数")
+    public int extraItems;
+
+    @Label("末影箱物品数")
+    public int enderChestItems;
+
+    @Label("成功")
+    public boolean success;
+
+    public void setPlayer(UUID uuid, String owningPlugin) {
+        this.playerUuid = uuid.toString();
+        this.plugin = owningPlugin;
+    }
+
+    public void setSections(PlayerDataSnapshot snapshot) {
+        this.inventoryItems = countItems(snapshot.inventory());
+        this.armorItems = countItems(snapshot.armor());
+        this.extraItems = countItems(snapshot.extra());
+        this.enderChestItems = countItems(snapshot.enderChest());
+    }
+
+    /**
+     * 只统计已解码的区段，未解码的区段保持为 0，以免为了记录事件而解码。
+     */
+    public void setSections(LazySnapshot snapshot) {
+        if (snapshot.isDecoded(SnapshotSection.INVENTORY)) {
+            this.inventoryItems = countItems(snapshot.inventory());
+            this.extraItems = countItems(snapshot.extra());
+        }
+        if (snapshot.isDecoded(SnapshotSection.ARMOR)) {
+            this.armorItems = countItems(snapshot.armor());
+        }
+        if (snapshot.isDecoded(SnapshotSection.ENDER_CHEST)) {
+            this.enderChestItems = countItems(snapshot.enderChest());
+        }
+    }
+
+    private static int countItems(ItemStack[] items) {
+        int count = 0;
+        for (ItemStack item : items) {
+            if (item != null && !item.getType().isAir()) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
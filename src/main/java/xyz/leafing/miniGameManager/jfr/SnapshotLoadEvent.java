@@ -0,0 +1,23 @@
+package xyz.leafing.miniGameManager.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("xyz.leafing.minigamemanager.SnapshotLoad")
+@Label("读取快照")
+@Description("从磁盘读取并解码一个玩家快照")
+public class SnapshotLoadEvent extends SnapshotEvent {
+
+    @Label("读盘耗时")
+    @Timespan
+    public long readTime;
+
+    @Label("解码耗时")
+    @Timespan
+    public long decodeTime;
+
+    @Label("旧版 YAML 格式")
+    public boolean legacyFormat;
+}
@@ -0,0 +1,14 @@
+package xyz.leafing.miniGameManager.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("xyz.leafing.minigamemanager.SnapshotRestore")
+@Label("恢复数据")
+@Description("restorePlayerData 从调用到完成的全过程，可能跨越多个线程")
+public class SnapshotRestoreEvent extends SnapshotEvent {
+
+    @Label("在线恢复")
+    public boolean online;
+}
@@ -0,0 +1,28 @@
+package xyz.leafing.miniGameManager.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("xyz.leafing.minigamemanager.SnapshotSave")
+@Label("保存快照")
+@Description("编码并写入一个玩家快照，事件时长为写入线程上的耗时")
+public class SnapshotSaveEvent extends SnapshotEvent {
+
+    @Label("主线程捕获耗时")
+    @Timespan
+    public long captureTime;
+
+    @Label("排队耗时")
+    @Timespan
+    public long queueTime;
+
+    @Label("编码耗时")
+    @Timespan
+    public long encodeTime;
+
+    @Label("写盘耗时")
+    @Timespan
+    public long writeTime;
+}
@@ -11,16 +11,18 @@ import org.bukkit.event.player.PlayerJoinEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 import xyz.leafing.miniGameManager.MiniGameManager;
-import xyz.leafing.miniGameManager.api.MiniGameAPI;
+import xyz.leafing.miniGameManager.implementation.MiniGameServiceImpl;
 import xyz.leafing.miniGameManager.utils.OfflinePlayerManager;
 
+import java.util.concurrent.TimeUnit;
+
 public class PlayerConnectionListener implements Listener {
 
     private final MiniGameManager plugin;
-    private final MiniGameAPI api;
+    private final MiniGameServiceImpl api;
     private final OfflinePlayerManager offlineManager;
 
-    public PlayerConnectionListener(MiniGameManager plugin, MiniGameAPI api, OfflinePlayerManager offlineManager) {
+    public PlayerConnectionListener(MiniGameManager plugin, MiniGameServiceImpl api, OfflinePlayerManager offlineManager) {
         this.plugin = plugin;
         this.api = api;
         this.offlineManager = offlineManager;
@@ -28,12 +30,23 @@ public class PlayerConnectionListener implements Listener {
 
     @EventHandler(priority = EventPriority.HIGHEST)
     public void onAsyncPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
-        if (offlineManager.isLocked(event.getUniqueId())) {
+        // 预登录在异步线程上执行，可以短暂等待正在进行的离线操作完成
+        long waitMillis = plugin.getConfig().getLong("locks.prelogin-wait-ms", 3000);
+        boolean ready = plugin.getRecoveryGate().awaitRecovered(event.getUniqueId(), waitMillis, TimeUnit.MILLISECONDS)
+                && offlineManager.awaitUnlocked(event.getUniqueId(), waitMillis);
+        if (!ready) {
             plugin.getLogger().warning("已阻止玩家 " + event.getName() + " 登录，因为其数据正在被后台操作。");
             event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_OTHER,
                     Component.text("您的玩家数据正在被后台系统处理。\n", NamedTextColor.YELLOW)
                             .append(Component.text("这是一个罕见情况，请在几秒钟后重试。", NamedTextColor.WHITE))
             );
+            return;
+        }
+
+        // 在异步线程上提前解码待恢复的快照，加入游戏时主线程只需应用结果。
+        // 共享模式下这里同时与存储核对待恢复状态，主线程上的 hasPendingData 只查内存
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            api.prefetchSnapshot(event.getUniqueId());
         }
     }
 
@@ -57,6 +70,7 @@ public class PlayerConnectionListener implements Listener {
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         Player player = event.getPlayer();
+        api.handleQuit(player.getUniqueId());
         // 检查玩家是否在游戏中掉线
         if (api.isInGame(player)) {
             JavaPlugin owner = api.getOwningPlugin(player).orElse(null);
@@ -0,0 +1,45 @@
+package xyz.leafing.miniGameManager.listeners;
+
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.java.JavaPlugin;
+import xyz.leafing.miniGameManager.MiniGameManager;
+import xyz.leafing.miniGameManager.implementation.MiniGameServiceImpl;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 小游戏插件被卸载或重载时，释放它登记的所有玩家，并恢复这些玩家的数据，
+ * 避免玩家因插件消失而永远处于“游戏中”状态。
+ */
+public class PluginLifecycleListener implements Listener {
+
+    private final MiniGameManager plugin;
+    private final MiniGameServiceImpl api;
+
+    public PluginLifecycleListener(MiniGameManager plugin, MiniGameServiceImpl api) {
+        this.plugin = plugin;
+        this.api = api;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        if (event.getPlugin() == plugin || !(event.getPlugin() instanceof JavaPlugin owner)) {
+            return;
+        }
+        Set<UUID> released = api.leaveAll(owner);
+        if (released.isEmpty()) {
+            return;
+        }
+        plugin.getLogger().warning("插件 " + owner.getName() + " 已卸载，已释放其登记的 " + released.size() + " 名玩家。");
+
+        if (!plugin.getConfig().getBoolean("sessions.restore-on-plugin-disable", true)) {
+            return;
+        }
+        api.restoreAll(released).future().thenAccept(restore -> plugin.getLogger().info(
+                "已为插件 " + owner.getName() + " 释放的玩家恢复 " + restore.getSucceeded() + "/" + restore.getTotal() + " 份数据。"));
+    }
+}
@@ -0,0 +1,109 @@
+package xyz.leafing.miniGameManager.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 崩溃安全的文件写入：先写入同目录下的临时文件并 fsync，再通过原子重命名替换目标文件。
+ * 任何时刻目标文件要么是旧内容，要么是完整的新内容。
+ */
+public final class AtomicFiles {
+
+    public static final String TEMP_SUFFIX = ".mgm_tmp";
+
+    /**
+     * 向临时文件写入内容。写入方可以关闭传入的流，关闭不会影响之后的 fsync 和替换。
+     */
+    @FunctionalInterface
+    public interface StreamWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private AtomicFiles() {
+    }
+
+    public static void write(Path target, byte[] data) throws IOException {
+        write(target, out -> out.write(data));
+    }
+
+    public static void write(Path target, StreamWriter writer) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+        boolean moved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+                // 部分写入方（如 NBT-API 最终调用的 NbtIo.writeCompressed）会关闭传入的流，
+                // 这里只把 close 当作 flush，通道在 fsync 之后才关闭
+                writer.write(new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        out.flush();
+                    }
+                });
+                out.flush();
+                channel.force(true);
+            }
+            try {
+                Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+            moved = true;
+            syncDirectory(target.getParent());
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temp);
+            }
+        }
+    }
+
+    /**
+     * 删除目录中上次崩溃遗留的临时文件。
+     *
+     * @return 删除的文件数量
+     */
+    public static int cleanupTempFiles(Path directory) throws IOException {
+        if (directory == null || !Files.isDirectory(directory)) {
+            return 0;
+        }
+        int removed = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+            for (Path temp : stream) {
+                if (Files.deleteIfExists(temp)) {
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * 让目录项的变化（新建、重命名）落盘。
+     */
+    public static void syncDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        // 让重命名本身也落盘；部分平台（如 Windows）不支持打开目录，忽略即可
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException ignored) {
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package xyz.leafing.miniGameManager.utils;
+
+import java.io.IOException;
+
+/**
+ * 以内容哈希为键保存单个物品的二进制 NBT，供快照只存引用而不存完整物品。
+ */
+public interface ItemBlobs {
+
+    int HASH_LENGTH = 32;
+
+    /**
+     * 保存物品数据（已存在则复用）并为其增加一个引用。
+     *
+     * @return 物品数据的内容哈希
+     */
+    byte[] store(byte[] itemNbt) throws IOException;
+
+    byte[] load(byte[] hash) throws IOException;
+}
@@ -0,0 +1,83 @@
+package xyz.leafing.miniGameManager.utils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 快照中一个物品区段的二进制布局，不涉及任何物品解码，因此可以脱离服务器单独使用。
+ *
+ * @param length 原物品数组长度
+ * @param slots  非空槽位的索引
+ * @param nbt    SECTION_INLINE 时为 {Items: [...]} 复合标签的未压缩二进制 NBT，否则为 null
+ * @param hashes SECTION_REFERENCED 时为每个物品的内容哈希，否则为空
+ */
+public record ItemSection(int length, int[] slots, byte[] nbt, List<byte[]> hashes) {
+
+    public static final byte SECTION_INLINE = 0;
+    public static final byte SECTION_REFERENCED = 1;
+
+    public static ItemSection inline(int length, int[] slots, byte[] nbt) {
+        return new ItemSection(length, slots, nbt, List.of());
+    }
+
+    public static ItemSection referenced(int length, int[] slots, List<byte[]> hashes) {
+        return new ItemSection(length, slots, null, hashes);
+    }
+
+    public boolean isReferenced() {
+        return nbt == null && slots.length > 0;
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeShort(length);
+        out.writeShort(slots.length);
+        for (int slot : slots) {
+            out.writeShort(slot);
+        }
+        if (slots.length == 0) {
+            return;
+        }
+        if (nbt == null) {
+            out.writeByte(SECTION_REFERENCED);
+            for (byte[] hash : hashes) {
+                out.write(hash);
+            }
+        } else {
+            out.writeByte(SECTION_INLINE);
+            out.writeInt(nbt.length);
+            out.write(nbt);
+        }
+    }
+
+    /**
+     * @param version 快照格式版本；版本 1 没有存储方式字节，总是内联
+     */
+    public static ItemSection read(DataInputStream in, int version) throws IOException {
+        int length = in.readUnsignedShort();
+        int count = in.readUnsignedShort();
+        int[] slots = new int[count];
+        for (int i = 0; i < count; i++) {
+            slots[i] = in.readUnsignedShort();
+            if (slots[i] >= length) {
+                throw new IOException("物品区段损坏: 槽位 " + slots[i] + " 超出数组长度 " + length);
+            }
+        }
+        if (count == 0) {
+            return inline(length, slots, new byte[0]);
+        }
+
+        byte mode = version >= 2 ? in.readByte() : SECTION_INLINE;
+        if (mode == SECTION_REFERENCED) {
+            byte[][] hashes = new byte[count][ItemBlobs.HASH_LENGTH];
+            for (byte[] hash : hashes) {
+                in.readFully(hash);
+            }
+            return referenced(length, slots, List.of(hashes));
+        }
+        byte[] nbt = new byte[in.readInt()];
+        in.readFully(nbt);
+        return inline(length, slots, nbt);
+    }
+}
@@ -0,0 +1,131 @@
+package xyz.leafing.miniGameManager.utils;
+
+import org.bukkit.attribute.Attribute;
+import org.bukkit.attribute.AttributeInstance;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * 预先构建好的装备包，包括背包、盔甲、副手、末影箱、药水效果和状态。
+ * 内容在创建时复制一次，之后不再改变，所有玩家共用同一组物品数组：
+ * Bukkit 在 setContents 时会为每名玩家复制物品，因此共享是安全的。
+ * <p>
+ * 磁盘上的格式与玩家快照相同（见 {@link SnapshotCodec}），物品内联保存，不依赖物品去重存储。
+ */
+public final class Kit {
+
+    private static final Pattern ID_PATTERN = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    private final String id;
+    private final PlayerDataSnapshot contents;
+
+    private Kit(String id, PlayerDataSnapshot contents) {
+        this.id = id;
+        this.contents = contents;
+    }
+
+    /**
+     * @param id       装备包 ID，只能包含字母、数字、下划线和连字符，同时用作文件名
+     * @param contents 装备包内容，物品会被复制，之后修改原快照不影响装备包
+     */
+    public static Kit of(String id, PlayerDataSnapshot contents) {
+        if (!isValidId(id)) {
+            throw new IllegalArgumentException("装备包 ID 只能包含字母、数字、下划线和连字符: " + id);
+        }
+        return new Kit(id, copy(contents));
+    }
+
+    /**
+     * 从 {@link #encode()} 的结果还原装备包。会反序列化物品，需要服务器环境。
+     */
+    public static Kit decode(String id, byte[] data) throws IOException {
+        if (!isValidId(id)) {
+            throw new IOException("无效的装备包 ID: " + id);
+        }
+        return new Kit(id, SnapshotCodec.decode(data, null));
+    }
+
+    public static boolean isValidId(String id) {
+        return id != null && ID_PATTERN.matcher(id).matches();
+    }
+
+    public byte[] encode() throws IOException {
+        return SnapshotCodec.encode(contents, true, null);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return 装备包内容的副本
+     */
+    public PlayerDataSnapshot toSnapshot() {
+        return copy(contents);
+    }
+
+    /**
+     * 用装备包替换玩家的背包、末影箱、药水效果和状态，相当于清空玩家后发放装备包。必须在主线程调用。
+     */
+    public void equip(Player player) {
+        PlayerInventory inventory = player.getInventory();
+        // 完整背包数组已包含盔甲和副手槽位，之后的两次设置只在内容由插件手动构造时有差别
+        inventory.setContents(contents.inventory());
+        inventory.setArmorContents(contents.armor());
+        inventory.setExtraContents(contents.extra());
+        player.getEnderChest().setContents(contents.enderChest());
+
+        AttributeInstance maxHealth = Objects.requireNonNull(player.getAttribute(Attribute.GENERIC_MAX_HEALTH));
+        maxHealth.setBaseValue(contents.maxHealth());
+        // 一次清除所有效果，而不是逐个查询并移除
+        player.clearActivePotionEffects();
+        player.addPotionEffects(contents.potionEffects());
+        // 在效果（如生命提升）生效后再设置生命值
+        player.setHealth(Math.min(contents.health(), maxHealth.getValue()));
+        player.setFoodLevel(contents.foodLevel());
+        player.setSaturation(contents.saturation());
+
+        player.setTotalExperience(contents.totalExperience());
+        player.setLevel(contents.level());
+        player.setExp(contents.exp());
+
+        player.setGameMode(contents.gameMode());
+        player.setAllowFlight(contents.allowFlight());
+        player.setFlying(contents.flying());
+    }
+
+    private static PlayerDataSnapshot copy(PlayerDataSnapshot snapshot) {
+        return new PlayerDataSnapshot(
+                copyItems(snapshot.inventory()),
+                copyItems(snapshot.armor()),
+                copyItems(snapshot.extra()),
+                copyItems(snapshot.enderChest()),
+                snapshot.health(),
+                snapshot.maxHealth(),
+                snapshot.foodLevel(),
+                snapshot.saturation(),
+                snapshot.level(),
+                snapshot.exp(),
+                snapshot.totalExperience(),
+                snapshot.gameMode(),
+                List.copyOf(snapshot.potionEffects()),
+                snapshot.flying(),
+                snapshot.allowFlight()
+        );
+    }
+
+    private static ItemStack[] copyItems(ItemStack[] items) {
+        ItemStack[] copy = new ItemStack[items.length];
+        for (int i = 0; i < items.length; i++) {
+            ItemStack item = items[i];
+            copy[i] = (item == null || item.getType().isAir()) ? null : item.clone();
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,246 @@
+package xyz.leafing.miniGameManager.utils;
+
+import org.bukkit.GameMode;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.potion.PotionEffect;
+import xyz.leafing.miniGameManager.api.SnapshotSection;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 按区段延迟解码的快照视图。每个区段在第一次访问时才解压并解码，之后缓存结果；
+ * 只需要游戏模式或只恢复背包时，其他区段的物品不会被反序列化。
+ * <p>
+ * 解码会访问物品存储并反序列化物品，不应在主线程上触发。
+ * 需要在主线程使用的区段应先在后台线程通过 {@link #decode(Set)} 解码。
+ * 版本 1、2 和 YAML 快照没有区段表，在创建视图时一次性解码。
+ */
+public final class LazySnapshot {
+
+    /**
+     * {@link SnapshotSection#STATS} 区段的内容。
+     */
+    public record Stats(double health, double maxHealth, int foodLevel, float saturation, int level, float exp,
+                        int totalExperience, GameMode gameMode, boolean flying, boolean allowFlight) {
+    }
+
+    @FunctionalInterface
+    private interface SectionReader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private final byte[] data;
+    // 读取时的原始字节，用于判断存储中的快照是否已被替换；YAML 快照为 null
+    private byte[] source;
+    private final int version;
+    private final Map<SnapshotSection, SnapshotFormat.Slice> table;
+    private final ItemBlobs blobs;
+
+    private Stats stats;
+    private Collection<PotionEffect> potionEffects;
+    private ItemStack[] inventory;
+    private ItemStack[] extra;
+    private ItemStack[] armor;
+    private ItemStack[] enderChest;
+
+    private LazySnapshot(byte[] data, int version, Map<SnapshotSection, SnapshotFormat.Slice> table, ItemBlobs blobs) {
+        this.data = data;
+        this.version = version;
+        this.table = table;
+        this.blobs = blobs;
+    }
+
+    /**
+     * 包装一个已完整解码的快照。
+     */
+    public static LazySnapshot of(PlayerDataSnapshot snapshot) {
+        LazySnapshot view = new LazySnapshot(null, SnapshotFormat.VERSION, Map.of(), null);
+        view.stats = new Stats(snapshot.health(), snapshot.maxHealth(), snapshot.foodLevel(), snapshot.saturation(),
+                snapshot.level(), snapshot.exp(), snapshot.totalExperience(), snapshot.gameMode(),
+                snapshot.flying(), snapshot.allowFlight());
+        view.potionEffects = snapshot.potionEffects();
+        view.inventory = snapshot.inventory();
+        view.extra = snapshot.extra();
+        view.armor = snapshot.armor();
+        view.enderChest = snapshot.enderChest();
+        return view;
+    }
+
+    /**
+     * 解析文件头和区段表，不解码任何区段。
+     *
+     * @param blobs 快照引用物品存储时用于读取物品，可以为 null
+     */
+    public static LazySnapshot parse(byte[] data, ItemBlobs blobs) throws IOException {
+        int version = SnapshotFormat.readVersion(data);
+        LazySnapshot view = version < 3
+                ? of(SnapshotCodec.decodeWhole(data, blobs))
+                : new LazySnapshot(data, version, SnapshotFormat.readTable(data), blobs);
+        view.source = data;
+        return view;
+    }
+
+    /**
+     * @return 快照中包含的区段；只恢复过一部分的快照不再包含已恢复的区段
+     */
+    public Set<SnapshotSection> getSections() {
+        if (data == null) {
+            return EnumSet.allOf(SnapshotSection.class);
+        }
+        return table.isEmpty() ? EnumSet.noneOf(SnapshotSection.class) : EnumSet.copyOf(table.keySet());
+    }
+
+    public boolean hasSection(SnapshotSection section) {
+        return data == null || table.containsKey(section);
+    }
+
+    /**
+     * @return 存储中的快照数据是否已不是读取该视图时的数据；读取自 YAML 快照时无法判断，返回 false
+     */
+    public boolean isReplacedBy(byte[] stored) {
+        return source != null && !Arrays.equals(source, stored);
+    }
+
+    /**
+     * 编码去掉给定区段后的快照。有区段表时其余区段原样复制，否则重新编码其余区段，物品内联保存。
+     */
+    public byte[] without(Set<SnapshotSection> removed, boolean deflate) throws IOException {
+        if (data != null) {
+            return SnapshotFormat.without(data, removed);
+        }
+        Set<SnapshotSection> remaining = getSections();
+        remaining.removeAll(removed);
+        return SnapshotCodec.encode(toSnapshot(), deflate, null, remaining);
+    }
+
+    /**
+     * 解码给定的区段，已解码的区段和快照中没有的区段会被跳过。
+     */
+    public synchronized void decode(Set<SnapshotSection> sections) throws IOException {
+        for (SnapshotSection section : sections) {
+            if (!hasSection(section)) {
+                continue;
+            }
+            switch (section) {
+                case STATS -> {
+                    if (stats == null) {
+                        stats = read(section, SnapshotCodec::readStats);
+                    }
+                }
+                case EFFECTS -> {
+                    if (potionEffects == null) {
+                        potionEffects = read(section, SnapshotCodec::readEffects);
+                    }
+                }
+                case INVENTORY -> {
+                    if (inventory == null) {
+                        ItemStack[][] both = read(section, in -> new ItemStack[][]{
+                                SnapshotCodec.readItems(in, version, blobs), SnapshotCodec.readItems(in, version, blobs)});
+                        extra = both[1];
+                        inventory = both[0];
+                    }
+                }
+                case ARMOR -> {
+                    if (armor == null) {
+                        armor = read(section, in -> SnapshotCodec.readItems(in, version, blobs));
+                    }
+                }
+                case ENDER_CHEST -> {
+                    if (enderChest == null) {
+                        enderChest = read(section, in -> SnapshotCodec.readItems(in, version, blobs));
+                    }
+                }
+            }
+        }
+    }
+
+    public synchronized boolean isDecoded(SnapshotSection section) {
+        return switch (section) {
+            case STATS -> stats != null;
+            case EFFECTS -> potionEffects != null;
+            case INVENTORY -> inventory != null;
+            case ARMOR -> armor != null;
+            case ENDER_CHEST -> enderChest != null;
+        };
+    }
+
+    /**
+     * @throws UncheckedIOException 区段损坏时
+     */
+    public Stats stats() {
+        ensure(SnapshotSection.STATS);
+        return stats;
+    }
+
+    public GameMode gameMode() {
+        return stats().gameMode();
+    }
+
+    public Collection<PotionEffect> potionEffects() {
+        ensure(SnapshotSection.EFFECTS);
+        return potionEffects;
+    }
+
+    /**
+     * @return 与 {@link PlayerDataSnapshot#inventory()} 相同，包含背包的全部槽位
+     */
+    public ItemStack[] inventory() {
+        ensure(SnapshotSection.INVENTORY);
+        return inventory;
+    }
+
+    public ItemStack[] extra() {
+        ensure(SnapshotSection.INVENTORY);
+        return extra;
+    }
+
+    public ItemStack[] armor() {
+        ensure(SnapshotSection.ARMOR);
+        return armor;
+    }
+
+    public ItemStack[] enderChest() {
+        ensure(SnapshotSection.ENDER_CHEST);
+        return enderChest;
+    }
+
+    /**
+     * 解码所有区段并转换为完整的快照。
+     *
+     * @throws UncheckedIOException 任一区段损坏或已经恢复过时
+     */
+    public PlayerDataSnapshot toSnapshot() {
+        Stats s = stats();
+        return new PlayerDataSnapshot(inventory(), armor(), extra(), enderChest(), s.health(), s.maxHealth(),
+                s.foodLevel(), s.saturation(), s.level(), s.exp(), s.totalExperience(), s.gameMode(),
+                potionEffects(), s.flying(), s.allowFlight());
+    }
+
+    private void ensure(SnapshotSection section) {
+        if (!hasSection(section)) {
+            throw new UncheckedIOException(new IOException("快照缺少区段 " + section + "，该区段已经恢复过"));
+        }
+        try {
+            decode(EnumSet.of(section));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T read(SnapshotSection section, SectionReader<T> reader) throws IOException {
+        SnapshotFormat.Slice slice = table.get(section);
+        if (data == null || slice == null) {
+            throw new IOException("快照缺少区段 " + section);
+        }
+        try (DataInputStream in = SnapshotFormat.openSlice(data, slice)) {
+            return reader.read(in);
+        }
+    }
+}
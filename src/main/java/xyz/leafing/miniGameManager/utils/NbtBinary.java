@@ -0,0 +1,53 @@
+package xyz.leafing.miniGameManager.utils;
+
+import de.tr7zw.nbtapi.NBTCompound;
+import de.tr7zw.nbtapi.NBTContainer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 在 NBT-API 与未压缩的二进制 NBT 之间转换。
+ * NBT-API 只提供 gzip 包装的读写接口，这里负责剥离和补回 gzip 外壳。
+ */
+public final class NbtBinary {
+
+    private NbtBinary() {
+    }
+
+    /**
+     * 把复合标签写成未压缩的二进制 NBT。
+     */
+    public static byte[] write(NBTCompound compound) throws IOException {
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream(1024);
+        compound.writeCompound(gzipped);
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzipped.toByteArray()))) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * 从未压缩的二进制 NBT 读取复合标签。
+     * 使用不压缩的 gzip 帧包装数据，仅有一次内存拷贝和 CRC 计算的开销。
+     */
+    public static NBTContainer read(byte[] raw) throws IOException {
+        ByteArrayOutputStream framed = new ByteArrayOutputStream(raw.length + 32);
+        try (OutputStream out = new StoredGzipOutputStream(framed)) {
+            out.write(raw);
+        }
+        return new NBTContainer(new ByteArrayInputStream(framed.toByteArray()));
+    }
+
+    private static final class StoredGzipOutputStream extends GZIPOutputStream {
+        StoredGzipOutputStream(OutputStream out) throws IOException {
+            super(out);
+            def.setLevel(Deflater.NO_COMPRESSION);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package xyz.leafing.miniGameManager.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 对 gzip 压缩的 NBT 文件（如玩家 .dat）做定点修改，不构建整棵标签树。
+ * 只有包含待修改标签的复合标签会逐个读取标签名，其余内容（物品、配方、进度等）按字节原样复制。
+ * 已存在的标签在原位置被替换，不存在的标签追加到所在复合标签的末尾。
+ * <p>
+ * 同一个补丁也可以通过 {@link #applyTo(Target)} 应用到已解析的标签树上，作为流式修改失败时的回退。
+ * 本类不依赖 NBT-API。
+ */
+public final class NbtPatch {
+
+    private static final byte TAG_END = 0;
+    private static final byte TAG_BYTE = 1;
+    private static final byte TAG_SHORT = 2;
+    private static final byte TAG_INT = 3;
+    private static final byte TAG_LONG = 4;
+    private static final byte TAG_FLOAT = 5;
+    private static final byte TAG_DOUBLE = 6;
+    private static final byte TAG_BYTE_ARRAY = 7;
+    private static final byte TAG_STRING = 8;
+    private static final byte TAG_LIST = 9;
+    private static final byte TAG_COMPOUND = 10;
+    private static final byte TAG_INT_ARRAY = 11;
+    private static final byte TAG_LONG_ARRAY = 12;
+
+    // 与原版读取 NBT 时的嵌套上限一致
+    private static final int MAX_DEPTH = 512;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 已解析标签树的写入接口，由调用方适配到具体的 NBT 实现。
+     */
+    public interface Target {
+        void setInt(String name, int value);
+
+        void setLong(String name, long value);
+
+        void setString(String name, String value);
+
+        void setDoubleList(String name, double[] values);
+
+        void setFloatList(String name, float[] values);
+
+        /**
+         * @return 名为 name 的子复合标签，不存在时创建
+         */
+        Target compound(String name);
+    }
+
+    private sealed interface Entry permits IntValue, LongValue, StringValue, DoubleListValue, FloatListValue, Child {
+    }
+
+    private record IntValue(int value) implements Entry {
+    }
+
+    private record LongValue(long value) implements Entry {
+    }
+
+    private record StringValue(String value) implements Entry {
+    }
+
+    private record DoubleListValue(double[] values) implements Entry {
+    }
+
+    private record FloatListValue(float[] values) implements Entry {
+    }
+
+    private record Child(NbtPatch patch) implements Entry {
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+    public NbtPatch setInt(String name, int value) {
+        entries.put(name, new IntValue(value));
+        return this;
+    }
+
+    public NbtPatch setLong(String name, long value) {
+        entries.put(name, new LongValue(value));
+        return this;
+    }
+
+    public NbtPatch setString(String name, String value) {
+        entries.put(name, new StringValue(value));
+        return this;
+    }
+
+    public NbtPatch setDoubleList(String name, double... values) {
+        entries.put(name, new DoubleListValue(values.clone()));
+        return this;
+    }
+
+    public NbtPatch setFloatList(String name, float... values) {
+        entries.put(name, new FloatListValue(values.clone()));
+        return this;
+    }
+
+    /**
+     * @return 针对名为 name 的子复合标签的补丁，子标签不存在时会被创建
+     */
+    public NbtPatch compound(String name) {
+        if (entries.get(name) instanceof Child child) {
+            return child.patch();
+        }
+        NbtPatch patch = new NbtPatch();
+        entries.put(name, new Child(patch));
+        return patch;
+    }
+
+    /**
+     * 把另一个补丁的修改叠加到本补丁上，同名标签以 other 为准，效果与依次应用两个补丁相同。
+     */
+    public NbtPatch merge(NbtPatch other) {
+        for (Map.Entry<String, Entry> entry : other.entries.entrySet()) {
+            if (entry.getValue() instanceof Child child) {
+                compound(entry.getKey()).merge(child.patch());
+            } else {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 把补丁应用到已解析的标签树上。
+     */
+    public void applyTo(Target target) {
+        entries.forEach((name, entry) -> {
+            switch (entry) {
+                case IntValue(int value) -> target.setInt(name, value);
+                case LongValue(long value) -> target.setLong(name, value);
+                case StringValue(String value) -> target.setString(name, value);
+                case DoubleListValue(double[] values) -> target.setDoubleList(name, values);
+                case FloatListValue(float[] values) -> target.setFloatList(name, values);
+                case Child(NbtPatch patch) -> patch.applyTo(target.compound(name));
+            }
+        });
+    }
+
+    /**
+     * 读取 gzip 压缩的 NBT，应用补丁后以 gzip 写出。in 和 out 都不会被关闭。
+     *
+     * @throws IOException 读写失败，或数据不是以复合标签为根的有效 NBT；此时 out 中的内容不完整
+     */
+    public void rewrite(InputStream in, OutputStream out) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE));
+        GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(gzip, BUFFER_SIZE));
+
+        byte rootType = input.readByte();
+        if (rootType != TAG_COMPOUND) {
+            throw new IOException("根标签不是复合标签: " + rootType);
+        }
+        output.writeByte(rootType);
+        output.writeUTF(input.readUTF());
+        new Rewriter(input, output).patchCompound(this, 1);
+        output.flush();
+        gzip.finish();
+    }
+
+    private static final class Rewriter {
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private Rewriter(DataInputStream in, DataOutputStream out) {
+            this.in = in;
+            this.out = out;
+        }
+
+        /**
+         * 逐个读取复合标签中的标签名，只解析补丁涉及的标签，其余原样复制。
+         */
+        private void patchCompound(NbtPatch patch, int depth) throws IOException {
+            checkDepth(depth);
+            Set<String> remaining = new LinkedHashSet<>(patch.entries.keySet());
+            while (true) {
+                byte type = in.readByte();
+                if (type == TAG_END) {
+                    break;
+                }
+                String name = in.readUTF();
+                Entry entry = patch.entries.get(name);
+                if (entry == null) {
+                    out.writeByte(type);
+                    out.writeUTF(name);
+                    transfer(type, depth + 1, true);
+                } else if (entry instanceof Child child && type == TAG_COMPOUND) {
+                    remaining.remove(name);
+                    out.writeByte(type);
+                    out.writeUTF(name);
+                    patchCompound(child.patch(), depth + 1);
+                } else {
+                    remaining.remove(name);
+                    transfer(type, depth + 1, false);
+                    writeEntry(name, entry);
+                }
+            }
+            for (String name : remaining) {
+                writeEntry(name, patch.entries.get(name));
+            }
+            out.writeByte(TAG_END);
+        }
+
+        private void writeEntry(String name, Entry entry) throws IOException {
+            switch (entry) {
+                case IntValue(int value) -> {
+                    writeHeader(TAG_INT, name);
+                    out.writeInt(value);
+                }
+                case LongValue(long value) -> {
+                    writeHeader(TAG_LONG, name);
+                    out.writeLong(value);
+                }
+                case StringValue(String value) -> {
+                    writeHeader(TAG_STRING, name);
+                    out.writeUTF(value);
+                }
+                case DoubleListValue(double[] values) -> {
+                    writeHeader(TAG_LIST, name);
+                    out.writeByte(TAG_DOUBLE);
+                    out.writeInt(values.length);
+                    for (double value : values) {
+                        out.writeDouble(value);
+                    }
+                }
+                case FloatListValue(float[] values) -> {
+                    writeHeader(TAG_LIST, name);
+                    out.writeByte(TAG_FLOAT);
+                    out.writeInt(values.length);
+                    for (float value : values) {
+                        out.writeFloat(value);
+                    }
+                }
+                case Child(NbtPatch patch) -> {
+                    writeHeader(TAG_COMPOUND, name);
+                    for (Map.Entry<String, Entry> child : patch.entries.entrySet()) {
+                        writeEntry(child.getKey(), child.getValue());
+                    }
+                    out.writeByte(TAG_END);
+                }
+            }
+        }
+
+        private void writeHeader(byte type, String name) throws IOException {
+            out.writeByte(type);
+            out.writeUTF(name);
+        }
+
+        /**
+         * 复制（write 为 true）或跳过一个标签的负载，不解析其中的标签名。
+         */
+        private void transfer(byte type, int depth, boolean write) throws IOException {
+            int fixed = fixedSize(type);
+            if (fixed > 0) {
+                bytes(fixed, write);
+                return;
+            }
+            switch (type) {
+                case TAG_BYTE_ARRAY -> bytes(length(write), write);
+                case TAG_INT_ARRAY -> bytes(4L * length(write), write);
+                case TAG_LONG_ARRAY -> bytes(8L * length(write), write);
+                case TAG_STRING -> {
+                    int length = in.readUnsignedShort();
+                    if (write) {
+                        out.writeShort(length);
+                    }
+                    bytes(length, write);
+                }
+                case TAG_LIST -> {
+                    checkDepth(depth);
+                    byte element = in.readByte();
+                    if (write) {
+                        out.writeByte(element);
+                    }
+                    int count = length(write);
+                    int elementSize = fixedSize(element);
+                    if (elementSize > 0) {
+                        bytes((long) elementSize * count, write);
+                    } else if (element == TAG_END) {
+                        if (count > 0) {
+                            throw new IOException("TAG_End 列表的长度不为 0: " + count);
+                        }
+                    } else {
+                        for (int i = 0; i < count; i++) {
+                            transfer(element, depth + 1, write);
+                        }
+                    }
+                }
+                case TAG_COMPOUND -> {
+                    checkDepth(depth);
+                    while (true) {
+                        byte child = in.readByte();
+                        if (write) {
+                            out.writeByte(child);
+                        }
+                        if (child == TAG_END) {
+                            break;
+                        }
+                        int nameLength = in.readUnsignedShort();
+                        if (write) {
+                            out.writeShort(nameLength);
+                        }
+                        bytes(nameLength, write);
+                        transfer(child, depth + 1, write);
+                    }
+                }
+                default -> throw new IOException("未知的 NBT 标签类型: " + type);
+            }
+        }
+
+        private int length(boolean write) throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("NBT 长度为负数: " + length);
+            }
+            if (write) {
+                out.writeInt(length);
+            }
+            return length;
+        }
+
+        private void bytes(long count, boolean write) throws IOException {
+            if (!write) {
+                in.skipNBytes(count);
+                return;
+            }
+            while (count > 0) {
+                int chunk = (int) Math.min(count, buffer.length);
+                in.readFully(buffer, 0, chunk);
+                out.write(buffer, 0, chunk);
+                count -= chunk;
+            }
+        }
+
+        private static int fixedSize(byte type) {
+            return switch (type) {
+                case TAG_BYTE -> 1;
+                case TAG_SHORT -> 2;
+                case TAG_INT, TAG_FLOAT -> 4;
+                case TAG_LONG, TAG_DOUBLE -> 8;
+                default -> -1;
+            };
+        }
+
+        private static void checkDepth(int depth) throws IOException {
+            if (depth > MAX_DEPTH) {
+                throw new IOException("NBT 嵌套层数超过 " + MAX_DEPTH);
+            }
+        }
+    }
+}
@@ -12,14 +12,19 @@ import org.bukkit.Location;
 import org.bukkit.inventory.ItemStack;
 import org.bukkit.potion.PotionEffect;
 import xyz.leafing.miniGameManager.MiniGameManager;
+import xyz.leafing.miniGameManager.api.SnapshotSection;
+import xyz.leafing.miniGameManager.jfr.OfflineEditEvent;
+import xyz.leafing.miniGameManager.utils.OperationMetrics.Operation;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
@@ -27,117 +32,191 @@ import java.util.stream.Collectors;
 public class OfflinePlayerManager {
 
     private final MiniGameManager plugin;
-    private final Set<UUID> lockedPlayers = ConcurrentHashMap.newKeySet();
+    private final PlayerLockManager lockManager = new PlayerLockManager();
 
     public OfflinePlayerManager(MiniGameManager plugin) {
         this.plugin = plugin;
     }
 
     public boolean isLocked(UUID uuid) {
-        return lockedPlayers.contains(uuid);
+        return lockManager.isLocked(uuid);
+    }
+
+    /**
+     * 等待该玩家正在进行和已排队的离线操作完成。
+     *
+     * @return 如果在超时前操作全部完成，返回 true
+     */
+    public boolean awaitUnlocked(UUID uuid, long timeoutMillis) {
+        return lockManager.awaitUnlocked(uuid, timeoutMillis, TimeUnit.MILLISECONDS);
     }
 
     public boolean hasActiveLocks() {
-        return !lockedPlayers.isEmpty();
+        return lockManager.hasActiveLocks();
     }
 
     public Set<String> getLockedPlayerUUIDs() {
-        return lockedPlayers.stream().map(UUID::toString).collect(Collectors.toSet());
+        return lockManager.getLockedPlayers().stream().map(UUID::toString).collect(Collectors.toSet());
+    }
+
+    public PlayerLockManager getLockManager() {
+        return lockManager;
     }
 
     public boolean restorePlayerDataNBT(UUID uuid, PlayerDataSnapshot snapshot) {
+        return performSafeOperation(uuid, restoreOperation(snapshot), 1);
+    }
+
+    public boolean restorePlayerDataNBT(UUID uuid, LazySnapshot snapshot, Set<SnapshotSection> sections) {
+        return performSafeOperation(uuid, restoreOperation(snapshot, sections), 1);
+    }
+
+    public boolean clearFullDataNBT(UUID uuid) {
+        return performSafeOperation(uuid, clearFullDataOperation(), 1);
+    }
+
+    public boolean setGameModeNBT(UUID uuid, GameMode gameMode) {
+        return performSafeOperation(uuid, gameModeOperation(gameMode), 1);
+    }
+
+    public boolean teleportNBT(UUID uuid, Location location) {
+        return performSafeOperation(uuid, teleportOperation(location), 1);
+    }
+
+    /**
+     * 在一次读取-修改-写入中按顺序应用多个修改，只产生一次备份和一次写盘。
+     * 如果所有修改都只涉及少数标签（传送、游戏模式），会合并为一次流式修改。
+     */
+    public boolean editNBT(UUID uuid, List<Consumer<NBTFile>> operations) {
+        if (operations.stream().allMatch(PatchOperation.class::isInstance)) {
+            NbtPatch merged = new NbtPatch();
+            for (Consumer<NBTFile> operation : operations) {
+                merged.merge(((PatchOperation) operation).patch());
+            }
+            return performSafeOperation(uuid, new PatchOperation(merged), operations.size());
+        }
         return performSafeOperation(uuid, nbt -> {
-            nbt.getCompoundList("Inventory").clear();
-            nbt.getCompoundList("EnderItems").clear();
-            nbt.getCompoundList("ActiveEffects").clear();
+            for (Consumer<NBTFile> operation : operations) {
+                operation.accept(nbt);
+            }
+        }, operations.size());
+    }
+
+    public Consumer<NBTFile> restoreOperation(PlayerDataSnapshot snapshot) {
+        return restoreOperation(LazySnapshot.of(snapshot), EnumSet.allOf(SnapshotSection.class));
+    }
 
-            NBTCompoundList inventory = nbt.getCompoundList("Inventory");
-            for (int i = 0; i < snapshot.inventory().length; i++) {
-                ItemStack item = snapshot.inventory()[i];
-                if (item != null && !item.getType().isAir()) {
-                    NBTCompound fullItemNbt = NBTItem.convertItemtoNBT(item);
-                    fullItemNbt.setByte("Slot", (byte) i);
-                    inventory.add(fullItemNbt);
+    /**
+     * 只写回快照中选定的区段，文件中其他字段保持不变。区段应事先解码，否则会在写文件时解码。
+     */
+    public Consumer<NBTFile> restoreOperation(LazySnapshot snapshot, Set<SnapshotSection> sections) {
+        return nbt -> {
+            boolean restoreInventory = sections.contains(SnapshotSection.INVENTORY);
+            boolean restoreArmor = sections.contains(SnapshotSection.ARMOR);
+            if (restoreInventory || restoreArmor) {
+                NBTCompoundList inventory = nbt.getCompoundList("Inventory");
+                if (restoreInventory && restoreArmor) {
+                    inventory.clear();
+                } else {
+                    // 倒序删除，只移除本次要恢复的槽位
+                    for (int i = inventory.size() - 1; i >= 0; i--) {
+                        Byte slot = inventory.get(i).getByte("Slot");
+                        boolean armorSlot = slot != null && slot >= 100 && slot <= 103;
+                        if (armorSlot == restoreArmor) {
+                            inventory.remove(i);
+                        }
+                    }
                 }
-            }
-            for (int i = 0; i < snapshot.armor().length; i++) {
-                ItemStack item = snapshot.armor()[i];
-                if (item != null && !item.getType().isAir()) {
-                    NBTCompound fullItemNbt = NBTItem.convertItemtoNBT(item);
-                    fullItemNbt.setByte("Slot", (byte) (100 + i));
-                    inventory.add(fullItemNbt);
+                if (restoreInventory) {
+                    ItemStack[] contents = snapshot.inventory();
+                    // 完整背包数组的 36 之后是盔甲和副手，它们分别写入 100+ 和 -106 槽位
+                    for (int i = 0; i < Math.min(contents.length, 36); i++) {
+                        addItem(inventory, contents[i], i);
+                    }
+                    if (snapshot.extra().length > 0) {
+                        addItem(inventory, snapshot.extra()[0], -106);
+                    }
                 }
-            }
-            if (snapshot.extra().length > 0 && snapshot.extra()[0] != null) {
-                ItemStack item = snapshot.extra()[0];
-                if (!item.getType().isAir()) {
-                    NBTCompound fullItemNbt = NBTItem.convertItemtoNBT(item);
-                    fullItemNbt.setByte("Slot", (byte) -106);
-                    inventory.add(fullItemNbt);
+                if (restoreArmor) {
+                    for (int i = 0; i < snapshot.armor().length; i++) {
+                        addItem(inventory, snapshot.armor()[i], 100 + i);
+                    }
                 }
             }
 
-            NBTCompoundList enderChest = nbt.getCompoundList("EnderItems");
-            for (int i = 0; i < snapshot.enderChest().length; i++) {
-                ItemStack item = snapshot.enderChest()[i];
-                if (item != null && !item.getType().isAir()) {
-                    NBTCompound fullItemNbt = NBTItem.convertItemtoNBT(item);
-                    fullItemNbt.setByte("Slot", (byte) i);
-                    enderChest.add(fullItemNbt);
+            if (sections.contains(SnapshotSection.ENDER_CHEST)) {
+                NBTCompoundList enderChest = nbt.getCompoundList("EnderItems");
+                enderChest.clear();
+                for (int i = 0; i < snapshot.enderChest().length; i++) {
+                    addItem(enderChest, snapshot.enderChest()[i], i);
                 }
             }
 
-            nbt.setFloat("Health", (float) snapshot.health());
-            nbt.setInteger("foodLevel", snapshot.foodLevel());
-            nbt.setFloat("foodSaturationLevel", snapshot.saturation());
-
-            NBTCompoundList attributes = nbt.getCompoundList("Attributes");
-            boolean maxHealthAttributeFound = false;
-            // **--- FIX START ---**
-            // 遍历时使用 ReadWriteNBT，然后检查并转换为 NBTCompound
-            for (ReadWriteNBT attributeNBT : attributes) {
-                if (attributeNBT instanceof NBTCompound attribute) {
-                    if ("minecraft:generic.max_health".equals(attribute.getString("Name"))) {
-                        attribute.setDouble("Base", snapshot.maxHealth());
-                        maxHealthAttributeFound = true;
-                        break;
+            if (sections.contains(SnapshotSection.STATS)) {
+                LazySnapshot.Stats stats = snapshot.stats();
+                nbt.setFloat("Health", (float) stats.health());
+                nbt.setInteger("foodLevel", stats.foodLevel());
+                nbt.setFloat("foodSaturationLevel", stats.saturation());
+
+                NBTCompoundList attributes = nbt.getCompoundList("Attributes");
+                boolean maxHealthAttributeFound = false;
+                // **--- FIX START ---**
+                // 遍历时使用 ReadWriteNBT，然后检查并转换为 NBTCompound
+                for (ReadWriteNBT attributeNBT : attributes) {
+                    if (attributeNBT instanceof NBTCompound attribute) {
+                        if ("minecraft:generic.max_health".equals(attribute.getString("Name"))) {
+                            attribute.setDouble("Base", stats.maxHealth());
+                            maxHealthAttributeFound = true;
+                            break;
+                        }
                     }
                 }
-            }
-            // **--- FIX END ---**
-            if (!maxHealthAttributeFound) {
-                NBTCompound maxHealthAttribute = attributes.addCompound();
-                maxHealthAttribute.setString("Name", "minecraft:generic.max_health");
-                maxHealthAttribute.setDouble("Base", snapshot.maxHealth());
+                // **--- FIX END ---**
+                if (!maxHealthAttributeFound) {
+                    NBTCompound maxHealthAttribute = attributes.addCompound();
+                    maxHealthAttribute.setString("Name", "minecraft:generic.max_health");
+                    maxHealthAttribute.setDouble("Base", stats.maxHealth());
+                }
+
+                nbt.setInteger("XpLevel", stats.level());
+                nbt.setFloat("XpP", stats.exp());
+                nbt.setInteger("XpTotal", stats.totalExperience());
+
+                nbt.setInteger("playerGameType", stats.gameMode().getValue());
+
+                NBTCompound abilities = nbt.getCompound("abilities");
+                if (abilities == null) abilities = nbt.addCompound("abilities");
+                abilities.setBoolean("flying", stats.flying());
+                abilities.setBoolean("mayfly", stats.allowFlight());
             }
 
-            nbt.setInteger("XpLevel", snapshot.level());
-            nbt.setFloat("XpP", snapshot.exp());
-            nbt.setInteger("XpTotal", snapshot.totalExperience());
-
-            nbt.setInteger("playerGameType", snapshot.gameMode().getValue());
-
-            NBTCompoundList activeEffects = nbt.getCompoundList("ActiveEffects");
-            for (PotionEffect effect : snapshot.potionEffects()) {
-                NBTCompound effectNBT = activeEffects.addCompound();
-                // noinspection deprecation
-                effectNBT.setByte("Id", (byte) effect.getType().getId());
-                effectNBT.setByte("Amplifier", (byte) effect.getAmplifier());
-                effectNBT.setInteger("Duration", effect.getDuration());
-                effectNBT.setBoolean("Ambient", effect.isAmbient());
-                effectNBT.setBoolean("ShowParticles", effect.hasParticles());
-                effectNBT.setBoolean("ShowIcon", effect.hasIcon());
+            if (sections.contains(SnapshotSection.EFFECTS)) {
+                NBTCompoundList activeEffects = nbt.getCompoundList("ActiveEffects");
+                activeEffects.clear();
+                for (PotionEffect effect : snapshot.potionEffects()) {
+                    NBTCompound effectNBT = activeEffects.addCompound();
+                    // noinspection deprecation
+                    effectNBT.setByte("Id", (byte) effect.getType().getId());
+                    effectNBT.setByte("Amplifier", (byte) effect.getAmplifier());
+                    effectNBT.setInteger("Duration", effect.getDuration());
+                    effectNBT.setBoolean("Ambient", effect.isAmbient());
+                    effectNBT.setBoolean("ShowParticles", effect.hasParticles());
+                    effectNBT.setBoolean("ShowIcon", effect.hasIcon());
+                }
             }
+        };
+    }
 
-            NBTCompound abilities = nbt.getCompound("abilities");
-            if (abilities == null) abilities = nbt.addCompound("abilities");
-            abilities.setBoolean("flying", snapshot.flying());
-            abilities.setBoolean("mayfly", snapshot.allowFlight());
-        });
+    private static void addItem(NBTCompoundList list, ItemStack item, int slot) {
+        if (item != null && !item.getType().isAir()) {
+            NBTCompound fullItemNbt = NBTItem.convertItemtoNBT(item);
+            fullItemNbt.setByte("Slot", (byte) slot);
+            list.add(fullItemNbt);
+        }
     }
 
-    public boolean clearFullDataNBT(UUID uuid) {
-        return performSafeOperation(uuid, nbt -> {
+    public Consumer<NBTFile> clearFullDataOperation() {
+        return nbt -> {
             nbt.getCompoundList("Inventory").clear();
             nbt.getCompoundList("EnderItems").clear();
             nbt.getCompoundList("ActiveEffects").clear();
@@ -145,92 +224,212 @@ public class OfflinePlayerManager {
             nbt.setInteger("XpLevel", 0);
             nbt.setFloat("XpP", 0f);
             nbt.setInteger("XpTotal", 0);
-        });
+        };
     }
 
-    public boolean setGameModeNBT(UUID uuid, GameMode gameMode) {
-        return performSafeOperation(uuid, nbt -> {
-            int gameModeValue = gameMode.getValue();
+    public Consumer<NBTFile> gameModeOperation(GameMode gameMode) {
+        int gameModeValue = gameMode.getValue();
+        NbtPatch patch = new NbtPatch();
 
-            // **--- FIX START ---**
-            // 1. 设置原版 Minecraft 的标签
-            nbt.setInteger("playerGameType", gameModeValue);
+        // **--- FIX START ---**
+        // 1. 设置原版 Minecraft 的标签
+        patch.setInt("playerGameType", gameModeValue);
 
-            // 2. 设置 Bukkit/Spigot/Paper 的标签
-            NBTCompound bukkitCompound = nbt.getOrCreateCompound("bukkit");
-            bukkitCompound.setInteger("playerGameMode", gameModeValue);
-            // **--- FIX END ---**
-        });
+        // 2. 设置 Bukkit/Spigot/Paper 的标签
+        patch.compound("bukkit").setInt("playerGameMode", gameModeValue);
+        // **--- FIX END ---**
+        return new PatchOperation(patch);
     }
 
-    public boolean teleportNBT(UUID uuid, Location location) {
-        return performSafeOperation(uuid, nbt -> {
-            // 1. 更新坐标和朝向
-            var pos = nbt.getDoubleList("Pos");
-            pos.clear();
-            pos.add(location.getX());
-            pos.add(location.getY());
-            pos.add(location.getZ());
-
-            var rotation = nbt.getFloatList("Rotation");
-            rotation.clear();
-            rotation.add(location.getYaw());
-            rotation.add(location.getPitch());
-
-            // 2. 更新维度名称
-            nbt.setString("Dimension", location.getWorld().getKey().toString());
-
-            // 3. **关键修复**: 更新维度的UUID
-            UUID worldUUID = location.getWorld().getUID();
-            nbt.setLong("WorldUUIDMost", worldUUID.getMostSignificantBits());
-            nbt.setLong("WorldUUIDLeast", worldUUID.getLeastSignificantBits());
-        });
+    public Consumer<NBTFile> teleportOperation(Location location) {
+        NbtPatch patch = new NbtPatch();
+        // 1. 更新坐标和朝向
+        patch.setDoubleList("Pos", location.getX(), location.getY(), location.getZ());
+        patch.setFloatList("Rotation", location.getYaw(), location.getPitch());
+
+        // 2. 更新维度名称
+        patch.setString("Dimension", location.getWorld().getKey().toString());
+
+        // 3. **关键修复**: 更新维度的UUID
+        UUID worldUUID = location.getWorld().getUID();
+        patch.setLong("WorldUUIDMost", worldUUID.getMostSignificantBits());
+        patch.setLong("WorldUUIDLeast", worldUUID.getLeastSignificantBits());
+        return new PatchOperation(patch);
+    }
+
+    /**
+     * 只修改少数标签的操作。单独或与同类操作一起提交时以流式方式改写 .dat，
+     * 与其他操作一起提交时作为普通操作应用到解析后的标签树上。
+     */
+    private record PatchOperation(NbtPatch patch) implements Consumer<NBTFile> {
+        @Override
+        public void accept(NBTFile nbt) {
+            patch.applyTo(new CompoundTarget(nbt));
+        }
+    }
+
+    private record CompoundTarget(NBTCompound compound) implements NbtPatch.Target {
+        @Override
+        public void setInt(String name, int value) {
+            compound.setInteger(name, value);
+        }
+
+        @Override
+        public void setLong(String name, long value) {
+            compound.setLong(name, value);
+        }
+
+        @Override
+        public void setString(String name, String value) {
+            compound.setString(name, value);
+        }
+
+        @Override
+        public void setDoubleList(String name, double[] values) {
+            var list = compound.getDoubleList(name);
+            list.clear();
+            for (double value : values) {
+                list.add(value);
+            }
+        }
+
+        @Override
+        public void setFloatList(String name, float[] values) {
+            var list = compound.getFloatList(name);
+            list.clear();
+            for (float value : values) {
+                list.add(value);
+            }
+        }
+
+        @Override
+        public NbtPatch.Target compound(String name) {
+            return new CompoundTarget(compound.getOrCreateCompound(name));
+        }
     }
 
-    private boolean performSafeOperation(UUID uuid, Consumer<NBTFile> nbtOperation) {
-        if (isLocked(uuid)) {
-            plugin.getLogger().warning("尝试操作一个已被锁定的玩家数据: " + uuid);
+    private boolean performSafeOperation(UUID uuid, Consumer<NBTFile> nbtOperation, int steps) {
+        // 计时包含等待锁的时间，这也是调用方实际感受到的延迟
+        long start = System.nanoTime();
+        OfflineEditEvent event = new OfflineEditEvent();
+        event.begin();
+        boolean success = false;
+        try {
+            success = performQueued(uuid, nbtOperation, event);
+            return success;
+        } finally {
+            plugin.getMetrics().record(Operation.OFFLINE_EDIT, start, success);
+            event.end();
+            if (event.shouldCommit()) {
+                event.setPlayer(uuid, plugin.getOwningPluginName(uuid));
+                event.operations = steps;
+                event.success = success;
+                event.commit();
+            }
+        }
+    }
+
+    private boolean performQueued(UUID uuid, Consumer<NBTFile> nbtOperation, OfflineEditEvent event) {
+        long timeoutMillis = plugin.getConfig().getLong("locks.operation-timeout-ms", 10000);
+        long lockStart = System.nanoTime();
+        // 启动恢复可能正在修复该玩家的 .dat，必须等它处理完
+        if (!plugin.getRecoveryGate().awaitRecovered(uuid, timeoutMillis, TimeUnit.MILLISECONDS)) {
+            plugin.getLogger().warning("等待玩家 " + uuid + " 的启动恢复超时，操作已取消。");
+            event.lockWaitTime = System.nanoTime() - lockStart;
             return false;
         }
+        try {
+            // 同一玩家的操作按顺序排队，而不是直接失败
+            if (!lockManager.tryLock(uuid, timeoutMillis, TimeUnit.MILLISECONDS)) {
+                plugin.getLogger().warning("等待玩家 " + uuid + " 的数据锁超时，操作已取消。");
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            event.lockWaitTime = System.nanoTime() - lockStart;
+        }
 
+        try {
+            return performLocked(uuid, nbtOperation, event);
+        } finally {
+            lockManager.unlock(uuid);
+        }
+    }
+
+    private boolean performLocked(UUID uuid, Consumer<NBTFile> nbtOperation, OfflineEditEvent event) {
         File playerFile = getPlayerDatFile(uuid);
         if (playerFile == null || !playerFile.exists()) {
             plugin.getLogger().warning("找不到离线玩家 " + uuid + " 的数据文件。");
             return false;
         }
 
-        lockedPlayers.add(uuid);
-        File backupFile = new File(playerFile.getPath() + ".mgm_bak");
+        if (nbtOperation instanceof PatchOperation operation && plugin.getConfig().getBoolean("offline-io.streaming-patch", true)) {
+            try {
+                performStreamed(playerFile, operation.patch(), event);
+                return true;
+            } catch (IOException e) {
+                // 原文件没有被修改，改用完整解析再试一次
+                plugin.getLogger().warning("流式修改离线玩家 " + uuid + " 的数据失败，改用完整解析: " + e.getMessage());
+            }
+        }
 
         try {
-            Files.copy(playerFile.toPath(), backupFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            OperationMetrics metrics = plugin.getMetrics();
+            long readStart = System.nanoTime();
+            event.payloadBytes = playerFile.length();
+            metrics.addBytesRead(Operation.OFFLINE_EDIT, event.payloadBytes);
             NBTFile nbt = new NBTFile(playerFile);
+            long applyStart = System.nanoTime();
             nbtOperation.accept(nbt);
-            nbt.save();
+            long writeStart = System.nanoTime();
+            // 写入临时文件后原子替换，失败时原文件保持不变，无需额外备份
+            AtomicFiles.write(playerFile.toPath(), nbt::writeCompound);
+            event.readTime = applyStart - readStart;
+            event.applyTime = writeStart - applyStart;
+            event.writeTime = System.nanoTime() - writeStart;
+            event.writtenBytes = playerFile.length();
+            metrics.addBytesWritten(Operation.OFFLINE_EDIT, event.writtenBytes);
             return true;
         } catch (Exception e) {
-            plugin.getLogger().log(Level.SEVERE, "操作离线玩家 " + uuid + " 数据时发生严重错误！将从备份恢复。", e);
-            try {
-                if (backupFile.exists()) {
-                    Files.move(backupFile.toPath(), playerFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    plugin.getLogger().info("成功从备份恢复玩家 " + uuid + " 的数据。");
-                }
-            } catch (IOException ex) {
-                plugin.getLogger().log(Level.SEVERE, "从备份恢复玩家 " + uuid + " 数据失败！数据可能已损坏！", ex);
-            }
+            plugin.getLogger().log(Level.SEVERE, "操作离线玩家 " + uuid + " 数据时发生严重错误！原数据文件未被修改。", e);
             return false;
-        } finally {
-            if (backupFile.exists()) {
-                //noinspection ResultOfMethodCallIgnored
-                backupFile.delete();
-            }
-            lockedPlayers.remove(uuid);
         }
     }
 
-    private File getPlayerDatFile(UUID uuid) {
+    /**
+     * 边解压边改写 .dat，只替换补丁涉及的标签，写入临时文件后原子替换。
+     */
+    private void performStreamed(File playerFile, NbtPatch patch, OfflineEditEvent event) throws IOException {
+        OperationMetrics metrics = plugin.getMetrics();
+        long applyStart = System.nanoTime();
+        event.payloadBytes = playerFile.length();
+        AtomicFiles.write(playerFile.toPath(), out -> {
+            try (InputStream in = Files.newInputStream(playerFile.toPath())) {
+                patch.rewrite(in, out);
+            }
+            event.applyTime = System.nanoTime() - applyStart;
+        });
+        // 读取、修改和压缩在同一趟中完成，全部计入修改耗时，写盘耗时只包含 fsync 和替换
+        event.writeTime = System.nanoTime() - applyStart - event.applyTime;
+        event.streamed = true;
+        event.writtenBytes = playerFile.length();
+        metrics.addBytesRead(Operation.OFFLINE_EDIT, event.payloadBytes);
+        metrics.addBytesWritten(Operation.OFFLINE_EDIT, event.writtenBytes);
+    }
+
+    /**
+     * @return 主世界的 playerdata 目录，不存在时返回 null
+     */
+    public File getPlayerDataFolder() {
         File playerDataFolder = new File(Bukkit.getWorlds().get(0).getWorldFolder(), "playerdata");
-        if (!playerDataFolder.exists()) {
+        return playerDataFolder.exists() ? playerDataFolder : null;
+    }
+
+    private File getPlayerDatFile(UUID uuid) {
+        File playerDataFolder = getPlayerDataFolder();
+        if (playerDataFolder == null) {
             return null;
         }
         return new File(playerDataFolder, uuid + ".dat");
@@ -0,0 +1,157 @@
+package xyz.leafing.miniGameManager.utils;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * 按玩家 UUID 划分的锁。同一玩家的操作按到达顺序排队执行，不同玩家之间互不影响。
+ * 没有任何线程持有或等待时，对应的锁会被移除，不会无限增长。
+ */
+public class PlayerLockManager {
+
+    private static final class Entry {
+        private final ReentrantLock lock = new ReentrantLock(true);
+        // 正在持有或等待该锁的线程数，只在 ConcurrentHashMap 的 compute 中修改
+        private int users;
+    }
+
+    private final ConcurrentHashMap<UUID, Entry> locks = new ConcurrentHashMap<>();
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * 在超时时间内尝试获取玩家的锁。获取成功后必须调用 {@link #unlock(UUID)}。
+     *
+     * @return 如果在超时前获得了锁，返回 true
+     */
+    public boolean tryLock(UUID uuid, long timeout, TimeUnit unit) throws InterruptedException {
+        return acquire(uuid, timeout, unit, true);
+    }
+
+    private boolean acquire(UUID uuid, long timeout, TimeUnit unit, boolean record) throws InterruptedException {
+        Entry entry = retain(uuid);
+        long start = System.nanoTime();
+        boolean acquired = false;
+        try {
+            acquired = entry.lock.tryLock(timeout, unit);
+        } finally {
+            if (record) {
+                recordWait(System.nanoTime() - start, acquired);
+            }
+            if (!acquired) {
+                release(uuid);
+            }
+        }
+        return acquired;
+    }
+
+    public void unlock(UUID uuid) {
+        Entry entry = locks.get(uuid);
+        if (entry == null) {
+            throw new IllegalMonitorStateException("玩家 " + uuid + " 没有被锁定");
+        }
+        entry.lock.unlock();
+        release(uuid);
+    }
+
+    /**
+     * 等待该玩家当前及已排队的操作全部结束，不会阻止之后的新操作。
+     * 这里只是借锁排队，不计入锁等待指标，否则每次等待都会被算作一次获取。
+     *
+     * @return 如果在超时前没有操作在进行，返回 true
+     */
+    public boolean awaitUnlocked(UUID uuid, long timeout, TimeUnit unit) {
+        if (!isLocked(uuid)) {
+            return true;
+        }
+        try {
+            if (acquire(uuid, timeout, unit, false)) {
+                unlock(uuid);
+                return true;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public boolean isLocked(UUID uuid) {
+        Entry entry = locks.get(uuid);
+        return entry != null && entry.lock.isLocked();
+    }
+
+    public boolean hasActiveLocks() {
+        return locks.values().stream().anyMatch(entry -> entry.lock.isLocked());
+    }
+
+    public Set<UUID> getLockedPlayers() {
+        return locks.entrySet().stream()
+                .filter(entry -> entry.getValue().lock.isLocked())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet());
+    }
+
+    private Entry retain(UUID uuid) {
+        return locks.compute(uuid, (key, entry) -> {
+            if (entry == null) {
+                entry = new Entry();
+            }
+            entry.users++;
+            return entry;
+        });
+    }
+
+    private void release(UUID uuid) {
+        locks.computeIfPresent(uuid, (key, entry) -> --entry.users == 0 ? null : entry);
+    }
+
+    private void recordWait(long waitNanos, boolean acquired) {
+        acquisitions.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+        if (!acquired) {
+            timeouts.increment();
+        }
+    }
+
+    // --- 锁等待指标 ---
+
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    public long getTimeouts() {
+        return timeouts.sum();
+    }
+
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.sum();
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public double getAverageWaitNanos() {
+        long count = acquisitions.sum();
+        return count == 0 ? 0 : (double) totalWaitNanos.sum() / count;
+    }
+
+    public void resetMetrics() {
+        acquisitions.reset();
+        timeouts.reset();
+        totalWaitNanos.reset();
+        maxWaitNanos.set(0);
+    }
+}
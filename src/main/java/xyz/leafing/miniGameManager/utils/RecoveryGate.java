@@ -0,0 +1,85 @@
+package xyz.leafing.miniGameManager.utils;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 启动恢复期间的按玩家门闩。恢复扫描先列出所有目录并登记受影响的玩家，
+ * 之后只有对这些玩家的操作需要等待其文件修复完成，其他玩家在列目录结束后即可正常操作。
+ */
+public class RecoveryGate {
+
+    private final CompletableFuture<Void> listed = new CompletableFuture<>();
+    private final CompletableFuture<Void> finished = new CompletableFuture<>();
+    private final Map<UUID, CompletableFuture<Void>> affected = new ConcurrentHashMap<>();
+
+    /**
+     * 登记需要修复或校验文件的玩家。必须在 {@link #listingComplete()} 之前调用。
+     */
+    public void markAffected(Collection<UUID> players) {
+        for (UUID uuid : players) {
+            affected.putIfAbsent(uuid, new CompletableFuture<>());
+        }
+    }
+
+    public void listingComplete() {
+        listed.complete(null);
+    }
+
+    public void recovered(UUID uuid) {
+        CompletableFuture<Void> future = affected.remove(uuid);
+        if (future != null) {
+            future.complete(null);
+        }
+    }
+
+    /**
+     * 结束恢复并放行所有等待者，无论恢复是否成功。
+     */
+    public void finish() {
+        listed.complete(null);
+        affected.keySet().forEach(this::recovered);
+        finished.complete(null);
+    }
+
+    public boolean isFinished() {
+        return finished.isDone();
+    }
+
+    public CompletableFuture<Void> whenFinished() {
+        return finished;
+    }
+
+    /**
+     * 等待该玩家的文件恢复完成。恢复结束后这里只是一次 volatile 读取。
+     *
+     * @return 如果在超时前恢复完成（或该玩家不受影响），返回 true
+     */
+    public boolean awaitRecovered(UUID uuid, long timeout, TimeUnit unit) {
+        if (finished.isDone()) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            listed.get(timeout, unit);
+            CompletableFuture<Void> future = affected.get(uuid);
+            if (future != null) {
+                future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+}
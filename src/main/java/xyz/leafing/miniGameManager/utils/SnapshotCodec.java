@@ -0,0 +1,250 @@
+package xyz.leafing.miniGameManager.utils;
+
+import de.tr7zw.nbtapi.NBTCompound;
+import de.tr7zw.nbtapi.NBTCompoundList;
+import de.tr7zw.nbtapi.NBTContainer;
+import de.tr7zw.nbtapi.NBTItem;
+import org.bukkit.GameMode;
+import org.bukkit.NamespacedKey;
+import org.bukkit.Registry;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.potion.PotionEffect;
+import org.bukkit.potion.PotionEffectType;
+import xyz.leafing.miniGameManager.api.SnapshotSection;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+/**
+ * 玩家快照的二进制格式。
+ * <pre>
+ * int   MAGIC ("MGMS")
+ * byte  版本号
+ * byte  标志位 (FLAG_DEFLATE: 较大的区段各自经过 Deflate 压缩)
+ * byte  区段数量
+ * ---   区段表: 每项为 (区段 ID, 区段标志, 长度)，区段按表中顺序紧接在表之后
+ * ---   STATS: 生命值、饱食度、经验、游戏模式、飞行
+ * ---   EFFECTS: 数量 + (效果键, 时长, 等级, 粒子/图标标志)
+ * ---   INVENTORY: 主背包和副手两个物品区段
+ * ---   ARMOR、ENDER_CHEST: 各一个物品区段
+ *       物品区段布局见 {@link ItemSection}
+ * </pre>
+ * 每个区段都可以单独定位和解压，按需解码见 {@link LazySnapshot}。
+ * 文件头、区段表和状态字段由 {@link SnapshotFormat} 读写，本类只负责物品和药水效果的转换。
+ * 版本 1 和 2 没有区段表，状态、药水效果和 4 个物品区段依次排列，整个正文一起压缩。
+ */
+public final class SnapshotCodec {
+
+    private SnapshotCodec() {
+    }
+
+    public static byte[] encode(PlayerDataSnapshot snapshot, boolean deflate) throws IOException {
+        return encode(snapshot, deflate, null);
+    }
+
+    /**
+     * @param blobs 不为 null 时，物品以内容哈希引用的方式保存
+     */
+    public static byte[] encode(PlayerDataSnapshot snapshot, boolean deflate, ItemBlobs blobs) throws IOException {
+        return encode(snapshot, deflate, blobs, EnumSet.allOf(SnapshotSection.class));
+    }
+
+    /**
+     * 只编码给定的区段，用于保存只恢复了一部分的快照中剩余的区段。
+     */
+    public static byte[] encode(PlayerDataSnapshot snapshot, boolean deflate, ItemBlobs blobs,
+                                Set<SnapshotSection> included) throws IOException {
+        Map<SnapshotSection, SnapshotFormat.SectionWriter> sections = new EnumMap<>(SnapshotSection.class);
+        for (SnapshotSection section : included) {
+            sections.put(section, switch (section) {
+                case STATS -> out -> writeStats(out, snapshot);
+                case EFFECTS -> out -> writeEffects(out, snapshot);
+                case INVENTORY -> out -> {
+                    writeItems(out, snapshot.inventory(), blobs);
+                    writeItems(out, snapshot.extra(), blobs);
+                };
+                case ARMOR -> out -> writeItems(out, snapshot.armor(), blobs);
+                case ENDER_CHEST -> out -> writeItems(out, snapshot.enderChest(), blobs);
+            });
+        }
+        return SnapshotFormat.write(sections, deflate);
+    }
+
+    public static PlayerDataSnapshot decode(byte[] data) throws IOException {
+        return decode(data, null);
+    }
+
+    public static PlayerDataSnapshot decode(byte[] data, ItemBlobs blobs) throws IOException {
+        LazySnapshot snapshot = LazySnapshot.parse(data, blobs);
+        snapshot.decode(EnumSet.allOf(SnapshotSection.class));
+        return snapshot.toSnapshot();
+    }
+
+    /**
+     * 只读取快照引用的物品哈希，不解码任何物品，用于重建引用计数。
+     * 同一哈希被引用多次时会重复出现。
+     */
+    public static List<byte[]> readReferences(byte[] data) throws IOException {
+        List<byte[]> references = new ArrayList<>();
+        int version = SnapshotFormat.readVersion(data);
+        if (version < 2) {
+            return references;
+        }
+        if (version == 2) {
+            try (DataInputStream in = SnapshotFormat.openBody(data)) {
+                SnapshotFormat.Stats.read(in);
+                // 跳过药水效果
+                int effects = in.readUnsignedShort();
+                for (int i = 0; i < effects; i++) {
+                    in.readUTF();
+                    in.skipNBytes(4 + 4 + 3);
+                }
+                for (int section = 0; section < 4; section++) {
+                    references.addAll(ItemSection.read(in, version).hashes());
+                }
+            }
+            return references;
+        }
+
+        // 只需要解析物品区段，状态和药水效果不会被读取；已经单独恢复的区段不在快照中
+        Map<SnapshotSection, SnapshotFormat.Slice> table = SnapshotFormat.readTable(data);
+        for (SnapshotSection section : List.of(SnapshotSection.INVENTORY, SnapshotSection.ARMOR, SnapshotSection.ENDER_CHEST)) {
+            SnapshotFormat.Slice slice = table.get(section);
+            if (slice == null) {
+                continue;
+            }
+            try (DataInputStream in = SnapshotFormat.openSlice(data, slice)) {
+                int count = section == SnapshotSection.INVENTORY ? 2 : 1;
+                for (int i = 0; i < count; i++) {
+                    references.addAll(ItemSection.read(in, version).hashes());
+                }
+            }
+        }
+        return references;
+    }
+
+    /**
+     * 一次性解码版本 1 和 2 的快照。
+     */
+    static PlayerDataSnapshot decodeWhole(byte[] data, ItemBlobs blobs) throws IOException {
+        try (DataInputStream in = SnapshotFormat.openBody(data)) {
+            int version = data[4];
+            LazySnapshot.Stats stats = readStats(in);
+            List<PotionEffect> potionEffects = readEffects(in);
+            ItemStack[] inventory = readItems(in, version, blobs);
+            ItemStack[] armor = readItems(in, version, blobs);
+            ItemStack[] extra = readItems(in, version, blobs);
+            ItemStack[] enderChest = readItems(in, version, blobs);
+            return new PlayerDataSnapshot(inventory, armor, extra, enderChest, stats.health(), stats.maxHealth(),
+                    stats.foodLevel(), stats.saturation(), stats.level(), stats.exp(), stats.totalExperience(),
+                    stats.gameMode(), potionEffects, stats.flying(), stats.allowFlight());
+        }
+    }
+
+    private static void writeStats(DataOutputStream out, PlayerDataSnapshot snapshot) throws IOException {
+        new SnapshotFormat.Stats(snapshot.health(), snapshot.maxHealth(), snapshot.foodLevel(), snapshot.saturation(),
+                snapshot.level(), snapshot.exp(), snapshot.totalExperience(), snapshot.gameMode().name(),
+                snapshot.flying(), snapshot.allowFlight()).write(out);
+    }
+
+    static LazySnapshot.Stats readStats(DataInputStream in) throws IOException {
+        SnapshotFormat.Stats stats = SnapshotFormat.Stats.read(in);
+        return new LazySnapshot.Stats(stats.health(), stats.maxHealth(), stats.foodLevel(), stats.saturation(),
+                stats.level(), stats.exp(), stats.totalExperience(), GameMode.valueOf(stats.gameMode()),
+                stats.flying(), stats.allowFlight());
+    }
+
+    private static void writeEffects(DataOutputStream out, PlayerDataSnapshot snapshot) throws IOException {
+        out.writeShort(snapshot.potionEffects().size());
+        for (PotionEffect effect : snapshot.potionEffects()) {
+            out.writeUTF(effect.getType().getKey().toString());
+            out.writeInt(effect.getDuration());
+            out.writeInt(effect.getAmplifier());
+            out.writeBoolean(effect.isAmbient());
+            out.writeBoolean(effect.hasParticles());
+            out.writeBoolean(effect.hasIcon());
+        }
+    }
+
+    static List<PotionEffect> readEffects(DataInputStream in) throws IOException {
+        int count = in.readUnsignedShort();
+        List<PotionEffect> effects = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String key = in.readUTF();
+            int duration = in.readInt();
+            int amplifier = in.readInt();
+            boolean ambient = in.readBoolean();
+            boolean particles = in.readBoolean();
+            boolean icon = in.readBoolean();
+
+            NamespacedKey namespacedKey = NamespacedKey.fromString(key);
+            PotionEffectType type = namespacedKey == null ? null : Registry.EFFECT.get(namespacedKey);
+            if (type != null) {
+                effects.add(new PotionEffect(type, duration, amplifier, ambient, particles, icon));
+            }
+        }
+        return effects;
+    }
+
+    private static void writeItems(DataOutputStream out, ItemStack[] items, ItemBlobs blobs) throws IOException {
+        int[] slots = IntStream.range(0, items.length)
+                .filter(i -> items[i] != null && !items[i].getType().isAir())
+                .toArray();
+        if (slots.length == 0) {
+            ItemSection.inline(items.length, slots, null).write(out);
+            return;
+        }
+
+        if (blobs != null) {
+            List<byte[]> hashes = new ArrayList<>(slots.length);
+            for (int slot : slots) {
+                hashes.add(blobs.store(NbtBinary.write(NBTItem.convertItemtoNBT(items[slot]))));
+            }
+            ItemSection.referenced(items.length, slots, hashes).write(out);
+            return;
+        }
+
+        NBTContainer section = new NBTContainer();
+        NBTCompoundList list = section.getCompoundList("Items");
+        for (int slot : slots) {
+            list.addCompound().mergeCompound(NBTItem.convertItemtoNBT(items[slot]));
+        }
+        ItemSection.inline(items.length, slots, NbtBinary.write(section)).write(out);
+    }
+
+    static ItemStack[] readItems(DataInputStream in, int version, ItemBlobs blobs) throws IOException {
+        ItemSection section = ItemSection.read(in, version);
+        ItemStack[] items = new ItemStack[section.length()];
+        int[] slots = section.slots();
+        if (slots.length == 0) {
+            return items;
+        }
+
+        if (section.isReferenced()) {
+            if (blobs == null) {
+                throw new IOException("快照引用了物品存储，但物品存储不可用");
+            }
+            for (int i = 0; i < slots.length; i++) {
+                items[slots[i]] = NBTItem.convertNBTtoItem(NbtBinary.read(blobs.load(section.hashes().get(i))));
+            }
+            return items;
+        }
+
+        NBTCompoundList list = NbtBinary.read(section.nbt()).getCompoundList("Items");
+        if (list.size() != slots.length) {
+            throw new IOException("物品区段损坏: 槽位索引与物品数量不一致");
+        }
+        for (int i = 0; i < slots.length; i++) {
+            items[slots[i]] = NBTItem.convertNBTtoItem((NBTCompound) list.get(i));
+        }
+        return items;
+    }
+}
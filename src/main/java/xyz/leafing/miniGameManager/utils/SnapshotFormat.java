@@ -0,0 +1,225 @@
+package xyz.leafing.miniGameManager.utils;
+
+import xyz.leafing.miniGameManager.api.SnapshotSection;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 快照二进制格式中与物品解码无关的部分：文件头、区段表、区段压缩和状态字段。
+ * 不依赖服务器，{@link SnapshotCodec} 和基准测试共用这一份实现，完整布局见 {@link SnapshotCodec}。
+ */
+public final class SnapshotFormat {
+
+    public static final int MAGIC = 0x4D474D53;
+    public static final byte VERSION = 3;
+    public static final byte FLAG_DEFLATE = 0x01;
+    public static final byte SECTION_FLAG_DEFLATE = 0x01;
+    // 小于该长度的区段压缩后几乎不会变小，直接保存
+    private static final int DEFLATE_MIN_BYTES = 128;
+
+    /**
+     * 区段在快照数据中的位置。
+     */
+    public record Slice(int offset, int length, boolean deflated) {
+    }
+
+    /**
+     * {@link SnapshotSection#STATS} 区段的布局，游戏模式以枚举名保存。
+     */
+    public record Stats(double health, double maxHealth, int foodLevel, float saturation, int level, float exp,
+                        int totalExperience, String gameMode, boolean flying, boolean allowFlight) {
+
+        public void write(DataOutputStream out) throws IOException {
+            out.writeDouble(health);
+            out.writeDouble(maxHealth);
+            out.writeInt(foodLevel);
+            out.writeFloat(saturation);
+            out.writeInt(level);
+            out.writeFloat(exp);
+            out.writeInt(totalExperience);
+            out.writeUTF(gameMode);
+            out.writeBoolean(flying);
+            out.writeBoolean(allowFlight);
+        }
+
+        public static Stats read(DataInputStream in) throws IOException {
+            return new Stats(in.readDouble(), in.readDouble(), in.readInt(), in.readFloat(), in.readInt(),
+                    in.readFloat(), in.readInt(), in.readUTF(), in.readBoolean(), in.readBoolean());
+        }
+    }
+
+    @FunctionalInterface
+    public interface SectionWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * 写入文件头、区段表和各区段。区段按 {@link SnapshotSection} 的声明顺序排列；
+     * 只恢复过部分区段的快照会缺少这些区段，见 {@link #without(byte[], Set)}。
+     *
+     * @param deflate 为 true 时，较大的区段各自经过 Deflate 压缩
+     */
+    public static byte[] write(Map<SnapshotSection, SectionWriter> sections, boolean deflate) throws IOException {
+        Map<SnapshotSection, SectionWriter> ordered = new EnumMap<>(sections);
+        SnapshotSection[] ids = new SnapshotSection[ordered.size()];
+        byte[][] bodies = new byte[ordered.size()][];
+        boolean[] deflated = new boolean[ordered.size()];
+        int i = 0;
+        for (Map.Entry<SnapshotSection, SectionWriter> entry : ordered.entrySet()) {
+            byte[] raw = writeSection(entry.getValue());
+            ids[i] = entry.getKey();
+            deflated[i] = deflate && raw.length >= DEFLATE_MIN_BYTES;
+            bodies[i] = deflated[i] ? deflate(raw) : raw;
+            i++;
+        }
+        return assemble(deflate, ids, bodies, deflated);
+    }
+
+    /**
+     * 去掉版本 3 快照中给定的区段，其余区段原样复制，不解压也不重新编码。
+     */
+    public static byte[] without(byte[] data, Set<SnapshotSection> removed) throws IOException {
+        if (readVersion(data) < 3) {
+            throw new IOException("版本 " + data[4] + " 的快照没有区段表");
+        }
+        Map<SnapshotSection, Slice> table = readTable(data);
+        table.keySet().removeAll(removed);
+        SnapshotSection[] ids = table.keySet().toArray(new SnapshotSection[0]);
+        byte[][] bodies = new byte[ids.length][];
+        boolean[] deflated = new boolean[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            Slice slice = table.get(ids[i]);
+            bodies[i] = Arrays.copyOfRange(data, slice.offset(), slice.offset() + slice.length());
+            deflated[i] = slice.deflated();
+        }
+        return assemble((data[5] & FLAG_DEFLATE) != 0, ids, bodies, deflated);
+    }
+
+    private static byte[] assemble(boolean deflate, SnapshotSection[] ids, byte[][] bodies, boolean[] deflated)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeByte(deflate ? FLAG_DEFLATE : 0);
+            out.writeByte(bodies.length);
+            for (int i = 0; i < bodies.length; i++) {
+                out.writeByte(idOf(ids[i]));
+                out.writeByte(deflated[i] ? SECTION_FLAG_DEFLATE : 0);
+                out.writeInt(bodies[i].length);
+            }
+            for (byte[] body : bodies) {
+                out.write(body);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 校验文件头并返回格式版本。
+     */
+    public static int readVersion(byte[] data) throws IOException {
+        if (data.length < 6 || ByteBuffer.wrap(data).getInt(0) != MAGIC) {
+            throw new IOException("不是有效的快照文件");
+        }
+        byte version = data[4];
+        if (version < 1 || version > VERSION) {
+            throw new IOException("不支持的快照版本: " + version);
+        }
+        return version;
+    }
+
+    /**
+     * 读取版本 3 的区段表，不会解压任何区段。未知的区段 ID 被忽略，以便旧版本读取新增的区段。
+     */
+    public static Map<SnapshotSection, Slice> readTable(byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        try {
+            int count = buffer.get(6) & 0xFF;
+            int offset = 7 + count * 6;
+            Map<SnapshotSection, Slice> table = new EnumMap<>(SnapshotSection.class);
+            for (int i = 0; i < count; i++) {
+                int entry = 7 + i * 6;
+                int length = buffer.getInt(entry + 2);
+                if (length < 0 || offset + length > data.length) {
+                    throw new IOException("快照区段表损坏: 区段超出文件长度");
+                }
+                SnapshotSection section = sectionOf(buffer.get(entry));
+                if (section != null) {
+                    table.put(section, new Slice(offset, length, (buffer.get(entry + 1) & SECTION_FLAG_DEFLATE) != 0));
+                }
+                offset += length;
+            }
+            return table;
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("快照区段表被截断", e);
+        }
+    }
+
+    public static DataInputStream openSlice(byte[] data, Slice slice) {
+        InputStream in = new ByteArrayInputStream(data, slice.offset(), slice.length());
+        return new DataInputStream(slice.deflated() ? new InflaterInputStream(in) : in);
+    }
+
+    /**
+     * 打开版本 1 和 2 的正文。
+     */
+    public static DataInputStream openBody(byte[] data) throws IOException {
+        readVersion(data);
+        InputStream in = new ByteArrayInputStream(data, 6, data.length - 6);
+        return new DataInputStream((data[5] & FLAG_DEFLATE) != 0 ? new InflaterInputStream(in) : in);
+    }
+
+    private static byte idOf(SnapshotSection section) {
+        return switch (section) {
+            case STATS -> 0;
+            case EFFECTS -> 1;
+            case INVENTORY -> 2;
+            case ARMOR -> 3;
+            case ENDER_CHEST -> 4;
+        };
+    }
+
+    private static SnapshotSection sectionOf(byte id) {
+        return switch (id) {
+            case 0 -> SnapshotSection.STATS;
+            case 1 -> SnapshotSection.EFFECTS;
+            case 2 -> SnapshotSection.INVENTORY;
+            case 3 -> SnapshotSection.ARMOR;
+            case 4 -> SnapshotSection.ENDER_CHEST;
+            default -> null;
+        };
+    }
+
+    private static byte[] writeSection(SectionWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] raw) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(raw.length / 2 + 16);
+        try (OutputStream out = new DeflaterOutputStream(bytes)) {
+            out.write(raw);
+        }
+        return bytes.toByteArray();
+    }
+}
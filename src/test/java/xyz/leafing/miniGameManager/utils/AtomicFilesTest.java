@@ -0,0 +1,79 @@
+package xyz.leafing.miniGameManager.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AtomicFilesTest {
+
+    @TempDir
+    Path folder;
+
+    /**
+     * 与 NBTFile.writeCompound 最终调用的 NbtIo.writeCompressed 相同：压缩写入一个根复合标签后关闭传入的流。
+     */
+    private static void writeCompressed(OutputStream out, int dataVersion) throws IOException {
+        try (DataOutputStream data = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(out)))) {
+            data.writeByte(10);
+            data.writeUTF("");
+            data.writeByte(3);
+            data.writeUTF("DataVersion");
+            data.writeInt(dataVersion);
+            data.writeByte(0);
+        }
+    }
+
+    private static int readDataVersion(Path file) throws IOException {
+        try (DataInputStream data = new DataInputStream(new GZIPInputStream(Files.newInputStream(file)))) {
+            assertEquals(10, data.readByte());
+            assertEquals("", data.readUTF());
+            assertEquals(3, data.readByte());
+            assertEquals("DataVersion", data.readUTF());
+            int version = data.readInt();
+            assertEquals(0, data.readByte());
+            return version;
+        }
+    }
+
+    @Test
+    void writerMayCloseStream() throws IOException {
+        Path target = folder.resolve("player.dat");
+        AtomicFiles.write(target, out -> writeCompressed(out, 3953));
+        assertEquals(3953, readDataVersion(target));
+
+        AtomicFiles.write(target, out -> writeCompressed(out, 3955));
+        assertEquals(3955, readDataVersion(target));
+        assertFalse(Files.exists(folder.resolve("player.dat" + AtomicFiles.TEMP_SUFFIX)));
+    }
+
+    @Test
+    void failedWriteKeepsOriginal() throws IOException {
+        Path target = folder.resolve("player.dat");
+        byte[] original = {1, 2, 3};
+        AtomicFiles.write(target, original);
+
+        assertThrows(IOException.class, () -> AtomicFiles.write(target, out -> {
+            out.write(new byte[]{9, 9});
+            throw new IOException("写入中断");
+        }));
+        try (InputStream in = Files.newInputStream(target)) {
+            assertArrayEquals(original, in.readAllBytes());
+        }
+        assertFalse(Files.exists(folder.resolve("player.dat" + AtomicFiles.TEMP_SUFFIX)));
+    }
+}